@@ -0,0 +1,170 @@
+package com.siberika.idea.pascal.jps.builder;
+
+/**
+ * Line of compiler output split into location, message kind and text.
+ * Recognizes "path(line[,column]) Kind: text" and "Kind: text" forms in a single pass without regular expressions.
+ */
+class CompilerOutputLine {
+
+    static final String ERROR = "Error";
+    static final String FATAL = "Fatal";
+    static final String WARNING = "Warning";
+    static final String WARNING_LC = "warning";
+    static final String NOTE = "Note";
+    static final String HINT = "Hint";
+
+    private final String line;
+    private final String path;
+    private final int lineNum;
+    private final int column;
+    private final String kind;
+    private final String text;
+    private final String afterLocation;
+
+    private CompilerOutputLine(String line, String path, int lineNum, int column, String kind, String text, String afterLocation) {
+        this.line = line;
+        this.path = path;
+        this.lineNum = lineNum;
+        this.column = column;
+        this.kind = kind;
+        this.text = text;
+        this.afterLocation = afterLocation;
+    }
+
+    static CompilerOutputLine parse(String line) {
+        String str = trimLineEnd(line);
+        String kind = kindAt(str, 0);
+        if (kind != null) {
+            String text = str.substring(skipSpaces(str, kind.length() + 1));
+            return new CompilerOutputLine(str, null, -1, -1, kind, text, str);
+        }
+        CompilerOutputLine candidate = null;
+        int close = str.indexOf(')');
+        while (close > 0) {
+            int open = locationStart(str, close);
+            if (open >= 0) {
+                int pos = skipSpaces(str, close + 1);
+                kind = kindAt(str, pos);
+                if ((kind != null) || ((null == candidate) && ((pos > close + 1) || (pos == str.length())))) {
+                    String location = str.substring(open + 1, close);
+                    int comma = location.indexOf(',');
+                    int lineNum = Integer.parseInt(comma >= 0 ? location.substring(0, comma) : location);
+                    int column = comma >= 0 ? Integer.parseInt(location.substring(comma + 1)) : -1;
+                    String afterLocation = str.substring(pos);
+                    String text = kind != null ? str.substring(skipSpaces(str, pos + kind.length() + 1)) : afterLocation;
+                    candidate = new CompilerOutputLine(str, str.substring(0, open), lineNum, column, kind, text, afterLocation);
+                    if (kind != null) {
+                        return candidate;
+                    }
+                }
+            }
+            close = str.indexOf(')', close + 1);
+        }
+        return candidate != null ? candidate : new CompilerOutputLine(str, null, -1, -1, null, str, str);
+    }
+
+    // Returns kind of message if the text at the position starts with "Kind:"
+    private static String kindAt(String str, int pos) {
+        if (pos >= str.length()) {
+            return null;
+        }
+        switch (str.charAt(pos)) {
+            case 'E': return startsWithKind(str, pos, ERROR);
+            case 'F': return startsWithKind(str, pos, FATAL);
+            case 'W': return startsWithKind(str, pos, WARNING);
+            case 'w': return startsWithKind(str, pos, WARNING_LC);
+            case 'N': return startsWithKind(str, pos, NOTE);
+            case 'H': return startsWithKind(str, pos, HINT);
+            default: return null;
+        }
+    }
+
+    private static String startsWithKind(String str, int pos, String kind) {
+        int end = pos + kind.length();
+        return (end < str.length()) && (str.charAt(end) == ':') && str.startsWith(kind, pos) ? kind : null;
+    }
+
+    // Returns index of opening parenthesis of "(digits[,digits])" which ends at the given index or -1
+    private static int locationStart(String str, int close) {
+        int i = close - 1;
+        int digits = 0;
+        boolean comma = false;
+        while (i >= 0) {
+            char c = str.charAt(i);
+            if ((c >= '0') && (c <= '9')) {
+                digits++;
+                if (digits > 9) {
+                    return -1;
+                }
+            } else if ((',' == c) && !comma && (digits > 0)) {
+                comma = true;
+                digits = 0;
+            } else if ('(' == c) {
+                return digits > 0 ? i : -1;
+            } else {
+                return -1;
+            }
+            i--;
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(String str, int pos) {
+        while ((pos < str.length()) && Character.isWhitespace(str.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static String trimLineEnd(String line) {
+        int end = line.length();
+        while ((end > 0) && ((line.charAt(end - 1) == '\n') || (line.charAt(end - 1) == '\r'))) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    /**
+     * @return the line without line separator
+     */
+    String getLine() {
+        return line;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    int getLineNum() {
+        return lineNum;
+    }
+
+    int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return kind of message or null if not recognized
+     */
+    String getKind() {
+        return kind;
+    }
+
+    /**
+     * @return text after kind of message or after location if kind is not recognized
+     */
+    String getText() {
+        return text;
+    }
+
+    /**
+     * @return text after location including kind of message
+     */
+    String getAfterLocation() {
+        return afterLocation;
+    }
+
+    boolean isHintOrNote() {
+        return HINT.equals(kind) || NOTE.equals(kind);
+    }
+}
@@ -1,10 +1,6 @@
 package com.siberika.idea.pascal.jps.builder;
 
 import com.siberika.idea.pascal.jps.compiler.CompilerMessager;
-import org.jetbrains.annotations.NonNls;
-
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Author: George Bakhtadze
@@ -12,38 +8,20 @@ import java.util.regex.Pattern;
  */
 public class FPCCompilerProcessAdapter extends PascalCompilerProcessAdapter {
 
-    @NonNls private static final String PATTERN_COMMON = "((.*)\\((\\d+),(\\d+)\\))?\\s*";
-    @NonNls private static final String PATTERN_MESSAGE = "\\s*(.*)$";
-    @NonNls private static final Pattern PATTERN_ERROR = Pattern.compile("((.*)\\((\\d+),(\\d+)\\))\\s*(Error|Fatal):" + PATTERN_MESSAGE);
-    @NonNls private static final Pattern PATTERN_WARNING = Pattern.compile(PATTERN_COMMON + "(Error|Fatal|Warning|warning):" + PATTERN_MESSAGE);
-    @NonNls private static final Pattern PATTERN_INFO = Pattern.compile(PATTERN_COMMON + PATTERN_MESSAGE);
-
     public FPCCompilerProcessAdapter(CompilerMessager messager) {
         super(messager);
     }
 
     @Override
-    protected boolean processLine(CompilerMessager messager, String line) {
-        if (line == null) {
-            return false;
-        }
-        Matcher matcher = PATTERN_ERROR.matcher(line);
-        if (matcher.find()) {
-            PascalCompilerMessager.createMessage(CompilerMessageCategory.ERROR, line, matcher, messager);
-        } else {
-            matcher = PATTERN_WARNING.matcher(line);
-            if (matcher.find()) {
-                PascalCompilerMessager.createMessage(CompilerMessageCategory.WARNING, line, matcher, messager);
-            } else {
-                matcher = PATTERN_INFO.matcher(line);
-                if (matcher.find()) {
-                    PascalCompilerMessager.createMessage(CompilerMessageCategory.INFO, line, matcher, messager);
-                } else {
-                    PascalCompilerMessager.createMessage(CompilerMessageCategory.INFO, line, null, messager);
-                }
-            }
+    protected CompilerMessageCategory getCategory(CompilerOutputLine line) {
+        String kind = line.getKind();
+        if (CompilerOutputLine.ERROR.equals(kind) || CompilerOutputLine.FATAL.equals(kind)) {
+            // Errors without location are followed by located ones or by "Fatal: Compilation aborted"
+            return line.getPath() != null ? CompilerMessageCategory.ERROR : CompilerMessageCategory.WARNING;
+        } else if (CompilerOutputLine.WARNING.equals(kind) || CompilerOutputLine.WARNING_LC.equals(kind)) {
+            return CompilerMessageCategory.WARNING;
         }
-        return true;
+        return CompilerMessageCategory.INFO;
     }
 
 }
@@ -0,0 +1,141 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds targets concurrently with limited number of threads. A target is started as soon as all targets it depends on are built
+ * and is not started at all if any of them failed.
+ */
+class PascalBuildScheduler<T> {
+
+    private static final Logger LOG = Logger.getInstance(PascalBuildScheduler.class);
+
+    interface Task<T> {
+        /**
+         * @return true if the target was built successfully
+         */
+        boolean build(T target);
+    }
+
+    private final int parallelism;
+
+    PascalBuildScheduler(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    /**
+     * Builds all targets which are keys of the dependencies map. Dependencies which are not among the keys are considered built.
+     * Targets of dependency cycles are built one by one after all other targets.
+     * @param dependencies  targets each target depends on
+     * @return targets which were not built because some of their dependencies failed
+     */
+    Set<T> run(Map<T, ? extends Collection<T>> dependencies, final Task<T> task) throws InterruptedException {
+        // Number of not yet built dependencies of targets which are not started
+        final Map<T, Integer> pending = new LinkedHashMap<T, Integer>();
+        final Map<T, List<T>> dependents = new HashMap<T, List<T>>();
+        for (Map.Entry<T, ? extends Collection<T>> entry : dependencies.entrySet()) {
+            int count = 0;
+            for (T dependency : new LinkedHashSet<T>(entry.getValue())) {
+                if (dependencies.containsKey(dependency) && !dependency.equals(entry.getKey())) {
+                    List<T> list = dependents.get(dependency);
+                    if (null == list) {
+                        list = new ArrayList<T>();
+                        dependents.put(dependency, list);
+                    }
+                    list.add(entry.getKey());
+                    count++;
+                }
+            }
+            pending.put(entry.getKey(), count);
+        }
+
+        Set<T> skipped = new LinkedHashSet<T>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(dependencies.size(), 1)));
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+        Map<Future<Boolean>, T> running = new HashMap<Future<Boolean>, T>();
+        try {
+            for (T target : new ArrayList<T>(pending.keySet())) {
+                if (pending.get(target) == 0) {
+                    submit(completionService, running, pending, task, target);
+                }
+            }
+            while (!running.isEmpty()) {
+                Future<Boolean> future = completionService.take();
+                T target = running.remove(future);
+                if (isSuccess(future, target)) {
+                    for (T dependent : getDependents(dependents, target)) {
+                        Integer count = pending.get(dependent);
+                        if (count != null) {
+                            pending.put(dependent, count - 1);
+                            if (count == 1) {
+                                submit(completionService, running, pending, task, dependent);
+                            }
+                        }
+                    }
+                } else {
+                    skipDependents(dependents, pending, skipped, target);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (T target : new ArrayList<T>(pending.keySet())) {
+            if ((pending.remove(target) != null) && !task.build(target)) {
+                skipDependents(dependents, pending, skipped, target);
+            }
+        }
+        return skipped;
+    }
+
+    private void submit(CompletionService<Boolean> completionService, Map<Future<Boolean>, T> running, Map<T, Integer> pending,
+                        final Task<T> task, final T target) {
+        pending.remove(target);
+        running.put(completionService.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return task.build(target);
+            }
+        }), target);
+    }
+
+    private boolean isSuccess(Future<Boolean> future, T target) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOG.warn("Error building target " + target, e.getCause());
+            return false;
+        }
+    }
+
+    private void skipDependents(Map<T, List<T>> dependents, Map<T, Integer> pending, Set<T> skipped, T target) {
+        for (T dependent : getDependents(dependents, target)) {
+            if (pending.remove(dependent) != null) {
+                skipped.add(dependent);
+                skipDependents(dependents, pending, skipped, dependent);
+            }
+        }
+    }
+
+    private List<T> getDependents(Map<T, List<T>> dependents, T target) {
+        List<T> res = dependents.get(target);
+        return res != null ? res : Collections.<T>emptyList();
+    }
+}
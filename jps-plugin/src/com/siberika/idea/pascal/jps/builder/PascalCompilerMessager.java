@@ -7,8 +7,6 @@ import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 
-import java.util.regex.Matcher;
-
 /**
  * Author: George Bakhtadze
  * Date: 20/05/2015
@@ -22,33 +20,14 @@ class PascalCompilerMessager implements CompilerMessager {
         this.context = context;
     }
 
-    static void createMessage(CompilerMessageCategory category, String line, Matcher matcher, CompilerMessager messager) {
-        int lineNum = -1;
-        int colNum = -1;
-        String message = null;
-        String url = "";
-        if (null != matcher) {
-            int groupCount = matcher.groupCount();
-            if (groupCount >= 4) {
-                url = matcher.group(2);
-                if (url != null) {
-                    url = VirtualFileManager.extractPath(VirtualFileManager.constructUrl(URLUtil.FILE_PROTOCOL, url));
-                }
-                try {
-                    lineNum = Integer.parseInt(matcher.group(3));
-                    colNum = Integer.parseInt(matcher.group(4));
-                } catch (NumberFormatException ignore) {}
-            }
-            message = matcher.group(groupCount);
-        }
-        if (null == message) message = line;
-
+    static void createMessage(CompilerMessageCategory category, String message, String path, long line, long column, CompilerMessager messager) {
+        String url = path != null ? VirtualFileManager.extractPath(VirtualFileManager.constructUrl(URLUtil.FILE_PROTOCOL, path)) : null;
         if (CompilerMessageCategory.ERROR.equals(category)) {
-            messager.error(message, url, lineNum, colNum);
+            messager.error(message, url, line, column);
         } else if (CompilerMessageCategory.WARNING.equals(category)) {
-            messager.warning(message, url, lineNum, colNum);
+            messager.warning(message, url, line, column);
         } else {
-            messager.info(message, url, lineNum, colNum);
+            messager.info(message, url, line, column);
         }
     }
 
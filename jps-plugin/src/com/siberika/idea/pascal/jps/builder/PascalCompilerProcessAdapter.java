@@ -1,23 +1,184 @@
 package com.siberika.idea.pascal.jps.builder;
 
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.openapi.diagnostic.Logger;
 import com.siberika.idea.pascal.jps.compiler.CompilerMessager;
 import com.siberika.idea.pascal.jps.util.PascalConsoleProcessAdapter;
 
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
 /**
  * Author: George Bakhtadze
  * Date: 12/05/2014
+ *
+ * Compiler output is parsed and classified in the output reader thread and delivered to IDE by a separate thread so slow message processing
+ * doesn't block the compiler. Messages are delivered in the order of output via a bounded queue. If delivery falls behind
+ * lines other than errors and warnings are not queued but reported as a number of skipped lines. Errors and warnings are always delivered.
+ * Repeated hints and notes with the same text in the same file are reported once.
  */
 public abstract class PascalCompilerProcessAdapter extends PascalConsoleProcessAdapter {
+    private static final Logger LOG = Logger.getInstance(PascalCompilerProcessAdapter.class);
+
+    private static final int MAX_COLLAPSED = 10000;
+    // Errors and warnings are queued up to MAX_QUEUED messages, other lines up to MAX_QUEUED_INFO
+    private static final int MAX_QUEUED = 2000;
+    private static final int MAX_QUEUED_INFO = 1000;
+    private static final Message END = new Message(CompilerOutputLine.parse(""), null);
+
+    // Line of output with its category
+    private static class Message {
+        private final CompilerOutputLine line;
+        private final CompilerMessageCategory category;
+
+        private Message(CompilerOutputLine line, CompilerMessageCategory category) {
+            this.line = line;
+            this.category = category;
+        }
+    }
+
     private final CompilerMessager messager;
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<Message>(MAX_QUEUED);
+    private Thread deliveryThread;
+    // Guards queueing from stdout and stderr reader threads. Not used by delivery thread.
+    private final Object queueLock = new Object();
+    // Number of lines not queued since last queued message
+    private int skipped;
+
+    // Hints and notes already reported as file and text
+    private final Set<String> reported = new HashSet<String>();
+    // Number of repeated hints and notes not reported by file
+    private final Map<String, Integer> collapsed = new LinkedHashMap<String, Integer>();
 
     public PascalCompilerProcessAdapter(CompilerMessager messager) {
         this.messager = messager;
     }
 
-    abstract protected boolean processLine(CompilerMessager messager, String text);
+    /**
+     * Returns category of the message or null if the line should be reported as is
+     */
+    abstract protected CompilerMessageCategory getCategory(CompilerOutputLine line);
+
+    /**
+     * Parses and reports a line of compiler output in the calling thread
+     */
+    protected boolean processLine(CompilerMessager messager, String text) {
+        if (null == text) {
+            return false;
+        }
+        CompilerOutputLine line = CompilerOutputLine.parse(text);
+        deliver(messager, line, getCategory(line));
+        return true;
+    }
 
     @Override
     protected boolean onLine(String text) {
-        return processLine(messager, text);
+        CompilerOutputLine line = CompilerOutputLine.parse(text);
+        CompilerMessageCategory category = getCategory(line);
+        startDelivery();
+        synchronized (queueLock) {
+            if ((category != null) && !CompilerMessageCategory.INFO.equals(category)) {
+                enqueue(new Message(line, category));
+            } else if (queue.size() < MAX_QUEUED_INFO) {
+                enqueue(new Message(line, category));
+            } else {
+                skipped++;
+            }
+        }
+        return true;
+    }
+
+    // Queues the message after summary of lines skipped before it. Blocks only if delivery is behind by MAX_QUEUED messages.
+    private void enqueue(Message message) {
+        try {
+            if (skipped > 0) {
+                queue.put(new Message(CompilerOutputLine.parse(String.format("%d lines of compiler output are not shown", skipped)), null));
+                skipped = 0;
+            }
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void processTerminated(ProcessEvent event) {
+        super.processTerminated(event);
+        Thread thread;
+        synchronized (this) {
+            thread = deliveryThread;
+        }
+        if (thread != null) {
+            synchronized (queueLock) {
+                enqueue(END);
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            for (Map.Entry<String, Integer> entry : collapsed.entrySet()) {
+                PascalCompilerMessager.createMessage(CompilerMessageCategory.INFO, String.format("%d repeated hints and notes are not shown", entry.getValue()),
+                        entry.getKey(), -1L, -1L, messager);
+            }
+            collapsed.clear();
+        }
+    }
+
+    private synchronized void startDelivery() {
+        if (deliveryThread != null) {
+            return;
+        }
+        deliveryThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Message message;
+                    while ((message = queue.take()) != END) {
+                        try {
+                            deliver(messager, message.line, message.category);
+                        } catch (RuntimeException e) {
+                            LOG.warn("Error processing compiler message: " + message.line.getLine(), e);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "Pascal compiler output");
+        deliveryThread.setDaemon(true);
+        deliveryThread.start();
+    }
+
+    private void deliver(CompilerMessager messager, CompilerOutputLine line, CompilerMessageCategory category) {
+        if (null == category) {
+            messager.info(line.getLine(), null, -1L, -1L);
+        } else if (CompilerMessageCategory.INFO.equals(category)) {
+            if (line.isHintOrNote() && (line.getPath() != null) && isRepeated(line)) {
+                return;
+            }
+            PascalCompilerMessager.createMessage(category, line.getAfterLocation(), line.getPath(), line.getLineNum(), line.getColumn(), messager);
+        } else {
+            PascalCompilerMessager.createMessage(category, line.getText(), line.getPath(), line.getLineNum(), line.getColumn(), messager);
+        }
+    }
+
+    private synchronized boolean isRepeated(CompilerOutputLine line) {
+        String key = line.getPath() + "\n" + line.getText();
+        if (reported.contains(key)) {
+            Integer count = collapsed.get(line.getPath());
+            collapsed.put(line.getPath(), count != null ? count + 1 : 1);
+            return true;
+        }
+        if (reported.size() < MAX_COLLAPSED) {
+            reported.add(key);
+        }
+        return false;
     }
 }
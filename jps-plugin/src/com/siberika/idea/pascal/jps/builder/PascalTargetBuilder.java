@@ -3,7 +3,9 @@ package com.siberika.idea.pascal.jps.builder;
 import com.intellij.execution.process.BaseOSProcessHandler;
 import com.intellij.execution.process.ProcessAdapter;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.SmartList;
 import com.siberika.idea.pascal.jps.compiler.CompilerMessager;
 import com.siberika.idea.pascal.jps.compiler.DelphiBackendCompiler;
@@ -27,6 +29,7 @@ import org.jetbrains.jps.cmdline.ProjectDescriptor;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.ProjectBuildException;
 import org.jetbrains.jps.incremental.TargetBuilder;
+import org.jetbrains.jps.incremental.Utils;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.incremental.resources.ResourcesBuilder;
@@ -47,9 +50,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Author: George Bakhtadze
@@ -58,6 +65,12 @@ import java.util.Set;
 public class PascalTargetBuilder extends TargetBuilder<PascalSourceRootDescriptor, PascalTarget> {
     private static final Logger LOG = Logger.getInstance(PascalTargetBuilder.class);
     private static final String NAME = "Pascal builder";
+    private static final String UNIT_GRAPH_FILE = "unit-graph.txt";
+    private static final String UNIT_CACHE_DIR = "pascal-unit-cache";
+    private static final String BUILD_ALL_OPTION = "-B";
+    // Unit generated to compile all changed units of a module without main file
+    private static final String UNIT_LIST_NAME = "__module_units";
+    private static final Key<ScheduledBuild> SCHEDULED_BUILD = Key.create("pascal.scheduledBuild");
 
     protected PascalTargetBuilder(Collection<? extends BuildTargetType<? extends PascalTarget>> buildTargetTypes) {
         super(buildTargetTypes);
@@ -81,10 +94,15 @@ public class PascalTargetBuilder extends TargetBuilder<PascalSourceRootDescripto
     public void build(@NotNull PascalTarget target, @NotNull DirtyFilesHolder<PascalSourceRootDescriptor, PascalTarget> holder,
                       @NotNull BuildOutputConsumer outputConsumer, @NotNull CompileContext context) throws ProjectBuildException, IOException {
         LOG.info(String.format("Build() for target %s", target.getId()));
+        JpsModule module = target.getModule();
+        int parallelism = getParallelism(module.getSdk(JpsPascalSdkType.INSTANCE));
+        if (parallelism > 1) {
+            buildScheduled(target, outputConsumer, context, parallelism);
+            return;
+        }
         if (isDependencyTarget(target, context)) {
             return;
         }
-        JpsModule module = target.getModule();
         File mainFile = PascalBackendCompiler.getMainFile(ParamMap.getJpsParams(module.getProperties()));
 
         // Force main file to compile. TODO: force only for context-based (line marker?) run configurations
@@ -94,12 +112,29 @@ public class PascalTargetBuilder extends TargetBuilder<PascalSourceRootDescripto
             files.put(target, new SmartList<File>(mainFile));
         }
         collectChangedFiles(files, holder);
-        boolean isRebuild = JavaBuilderUtil.isForcedRecompilationAllJavaModules(context) || (!JavaBuilderUtil.isCompileJavaIncrementally(context));
+        boolean isRebuild = isRebuild(context);
         if (files.isEmpty() && !isRebuild) {
             context.processMessage(new CompilerMessage(getPresentableName(), BuildMessage.Kind.INFO, "No changes detected"));
             return;
         }
 
+        List<File> sourcePaths = new ArrayList<File>();
+        getFiles(new HashSet<JpsModule>(), sourcePaths, module);
+        Map<File, String> outputs = new HashMap<File, String>();
+        compile(target, files.containsKey(target) ? files.get(target) : Collections.<File>emptyList(), sourcePaths, isRebuild, isRebuild, outputs, context);
+        registerOutputs(outputConsumer, outputs);
+    }
+
+    /**
+     * Compiles the target's files with given unit paths. For modules with main file the compiler is not started
+     * if no unit reachable from the main file changed since last successful build.
+     * @param buildAll  compiler should rebuild all units it finds sources for
+     * @param outputs   filled with compiled unit files mapped to their sources
+     * @return true if compiler finished successfully or there was nothing to compile
+     */
+    private boolean compile(PascalTarget target, List<File> files, List<File> sourcePaths, boolean isRebuild, boolean buildAll,
+                            Map<File, String> outputs, CompileContext context) throws ProjectBuildException, IOException {
+        JpsModule module = target.getModule();
         CompilerMessager messager = new PascalCompilerMessager(getPresentableName(), context);
 
         JpsSdk<?> sdk = module.getSdk(JpsPascalSdkType.INSTANCE);
@@ -111,26 +146,66 @@ public class PascalTargetBuilder extends TargetBuilder<PascalSourceRootDescripto
                 sdkFiles.addAll(sdk.getParent().getFiles(JpsOrderRootType.SOURCES));
                 File outputDir = getBuildOutputDirectory(module, target.isTests(), context);
 
-                for (File file : files.get(target)) {
+                for (File file : files) {
                     File compiled = new File(outputDir, FileUtil.getNameWithoutExtension(file) + compiler.getCompiledUnitExt());
                     //messager.info(String.format("Map: %s => %s ", file.getCanonicalPath(), compiled.getCanonicalPath()), null, -1L, -1L);
-                    outputConsumer.registerOutputFile(compiled, Collections.singleton(file.getCanonicalPath()));
+                    outputs.put(compiled, file.getCanonicalPath());
                 }
 
-                List<File> sourcePaths = new ArrayList<File>();
-                getFiles(new HashSet<JpsModule>(), sourcePaths, module);
+                File dataRoot = context.getProjectDescriptor().dataManager.getDataPaths().getTargetDataRoot(target);
+                if (isEnabled(sdk, PascalSdkData.Keys.COMPILER_RESPONSE_FILE)) {
+                    compiler.setResponseFileDir(dataRoot, isRebuild);
+                }
+
+                File mainFile = PascalBackendCompiler.getMainFile(ParamMap.getJpsParams(module.getProperties()));
+                // With unit cache the compiler is not forced to rebuild all units as units restored from cache are up to date
+                boolean useCache = (mainFile != null) && isEnabled(sdk, PascalSdkData.Keys.COMPILER_UNIT_CACHE);
+
                 String[] cmdLine = compiler.createStartupCommand(sdk.getHomePath(), module.getName(), outputDir.getAbsolutePath(),
                         sdkFiles, sourcePaths,
-                        files.get(target), ParamMap.getJpsParams(module.getProperties()),
-                        isRebuild,
+                        mainFile != null ? files : getUnitsToCompile(files, dataRoot), ParamMap.getJpsParams(module.getProperties()),
+                        buildAll && !useCache,
                         ParamMap.getJpsParams(sdk.getSdkProperties()));
                 if (cmdLine != null) {
+                    PascalUnitGraph unitGraph = null;
+                    PascalUnitCache unitCache = null;
+                    Map<String, String> unitKeys = Collections.emptyMap();
+                    File graphFile = new File(dataRoot, UNIT_GRAPH_FILE);
+                    if (mainFile != null) {
+                        String exeOutputPath = PascalBackendCompiler.getExeOutputPath(ParamMap.getJpsParams(module.getProperties()));
+                        String optionsHash = PascalUnitCache.getOptionsHash(new File(cmdLine[0]), getUnitOptions(cmdLine, outputDir, exeOutputPath));
+                        Set<File> sourceDirs = com.siberika.idea.pascal.jps.util.FileUtil.retrievePaths(sourcePaths);
+                        unitGraph = PascalUnitGraph.load(graphFile, sourceDirs, optionsHash);
+                        if (useCache) {
+                            unitCache = new PascalUnitCache(new File(Utils.getSystemRoot(), UNIT_CACHE_DIR), optionsHash);
+                        }
+                        File exeFile = com.siberika.idea.pascal.jps.util.FileUtil.getExecutable(
+                                StringUtil.isEmpty(exeOutputPath) ? outputDir : new File(exeOutputPath), FileUtil.getNameWithoutExtension(mainFile));
+                        UnitBuild unitBuild = prepareUnits(unitGraph, mainFile, sourceDirs, exeFile, outputDir, isRebuild, unitCache, compiler.getUnitOutputExts());
+                        if (unitBuild.upToDate) {
+                            log(context, String.format("Nothing to do for module \"%s\": no units used by %s changed", module.getName(), mainFile.getName()));
+                            return true;
+                        }
+                        if (unitBuild.restored > 0) {
+                            log(context, String.format("Restored %d units of module \"%s\" from unit cache", unitBuild.restored, module.getName()));
+                        }
+                        unitKeys = unitBuild.unitKeys;
+                    }
                     // For Delphi workingDirectory should be null otherwise file paths in compiler messages will be relative
                     File workingDirectory = PascalCompilerFamily.DELPHI.equals(getCompilerFamily(sdk)) ? null : new File(FileUtil.expandUserHome("~/"));
                     int exitCode = launchCompiler(compiler, messager, cmdLine, workingDirectory);
                     if (exitCode != 0) {
                         messager.warning("Error. Compiler exit code: " + exitCode, null, -1L, -1L);
+                    } else if (unitGraph != null) {
+                        unitGraph.save(graphFile);
+                        if (unitCache != null) {
+                            for (Map.Entry<String, String> entry : unitKeys.entrySet()) {
+                                unitCache.store(entry.getValue(), FileUtil.getNameWithoutExtension(new File(entry.getKey())), outputDir, compiler.getUnitOutputExts());
+                            }
+                            unitCache.evict();
+                        }
                     }
+                    return exitCode == 0;
                 } else {
                     messager.warning("Error. Can't launch compiler", null, -1L, -1L);
                 }
@@ -140,6 +215,263 @@ public class PascalTargetBuilder extends TargetBuilder<PascalSourceRootDescripto
         } else {
             log(context, "Pascal SDK is not defined for module " + module.getName());
         }
+        return false;
+    }
+
+    /**
+     * Compiler compiles one file and the units it uses. So several changed units of a module without main file are compiled
+     * via a generated unit which uses all of them.
+     * @return the files if there is only one unit among them or the generated unit
+     */
+    static List<File> getUnitsToCompile(List<File> files, File dir) throws IOException {
+        Set<String> units = new LinkedHashSet<String>();
+        for (File file : files) {
+            if (PascalUnitGraph.isUnitFile(file.getPath())) {
+                units.add(FileUtil.getNameWithoutExtension(file));
+            }
+        }
+        if (units.size() < 2) {
+            return files;
+        }
+        File unitList = new File(dir, UNIT_LIST_NAME + ".pas");
+        FileUtil.writeToFile(unitList, String.format("unit %s;\n\ninterface\n\nuses\n  %s;\n\nimplementation\n\nend.\n",
+                UNIT_LIST_NAME, StringUtil.join(units, ",\n  ")));
+        return Collections.singletonList(unitList);
+    }
+
+    private static boolean isEnabled(JpsSdk<?> sdk, PascalSdkData.Keys key) {
+        ParamMap params = ParamMap.getJpsParams(sdk.getSdkProperties());
+        return (params != null) && PascalSdkData.SDK_DATA_TRUE.equals(params.get(key.getKey()));
+    }
+
+    // Compiler options which affect compiled units: all arguments except executable, main file, output paths and build all flag.
+    // Contents of response files are included as they can change while the file name is the same.
+    private static List<String> getUnitOptions(String[] cmdLine, File outputDir, @Nullable String exeOutputPath) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 1; i < cmdLine.length - 1; i++) {
+            String arg = cmdLine[i];
+            if (BUILD_ALL_OPTION.equals(arg)) {
+                continue;
+            }
+            if (arg.startsWith("@")) {
+                try {
+                    result.add(FileUtil.loadFile(new File(arg.substring(1)), "UTF-8"));
+                    continue;
+                } catch (IOException e) {
+                    LOG.info("Error reading response file " + arg, e);
+                }
+            }
+            if (!arg.contains(outputDir.getAbsolutePath()) && ((null == exeOutputPath) || !arg.contains(exeOutputPath))) {
+                result.add(arg);
+            }
+        }
+        return result;
+    }
+
+    // Units of a module with main file to compile
+    static class UnitBuild {
+        // No unit changed since last successful build with the same options and the executable exists
+        boolean upToDate;
+        // Number of units restored from unit cache
+        int restored;
+        // Cache keys of units compiled by the build by path
+        final Map<String, String> unitKeys = new LinkedHashMap<String, String>();
+    }
+
+    /**
+     * Finds units of a module with main file which should be compiled. Compiled files of the units are deleted from output directory
+     * and the ones found in unit cache are restored instead. All units are affected if the graph is new, e.g. when compiler options
+     * have been changed, so switching back to a previously used build configuration restores every unit from the cache.
+     * @param unitCache  unit cache or null if it's disabled
+     */
+    static UnitBuild prepareUnits(PascalUnitGraph unitGraph, File mainFile, Collection<File> sourceDirs, File exeFile, File outputDir,
+                                  boolean isRebuild, @Nullable PascalUnitCache unitCache, String[] unitOutputExts) throws IOException {
+        UnitBuild result = new UnitBuild();
+        Set<String> changed = unitGraph.update(mainFile, sourceDirs);
+        boolean clean = isRebuild || unitGraph.isNew();
+        if (!clean && changed.isEmpty() && exeFile.isFile()) {
+            result.upToDate = true;
+            return result;
+        }
+        Set<String> affected = clean ? new LinkedHashSet<String>(unitGraph.getFiles()) : unitGraph.getAffected(changed);
+        deleteStaleOutputs(outputDir, affected, unitOutputExts);
+        if (unitCache != null) {
+            for (String path : affected) {
+                if (PascalUnitGraph.isUnitFile(path) && !path.equals(mainFile.getAbsolutePath())) {
+                    String key = unitCache.getKey(unitGraph.getClosure(path));
+                    if (unitCache.restore(key, outputDir)) {
+                        result.restored++;
+                    } else {
+                        result.unitKeys.put(path, key);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    // Deletes compiled files of units which should be recompiled so the compiler doesn't use them.
+    // The files are searched with the source file name and with the name in lower case as FPC names them.
+    private static void deleteStaleOutputs(File outputDir, Set<String> affected, String[] unitOutputExts) {
+        for (String path : affected) {
+            String name = FileUtil.getNameWithoutExtension(new File(path));
+            deleteCompiled(outputDir, name, unitOutputExts);
+            String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+            if (!lowerCaseName.equals(name)) {
+                deleteCompiled(outputDir, lowerCaseName, unitOutputExts);
+            }
+        }
+    }
+
+    private static void deleteCompiled(File outputDir, String name, String[] unitOutputExts) {
+        for (String ext : unitOutputExts) {
+            File compiled = new File(outputDir, name + ext);
+            if (compiled.isFile() && !compiled.delete()) {
+                LOG.info("Can't delete stale compiled file: " + compiled);
+            }
+        }
+    }
+
+    private static void registerOutputs(BuildOutputConsumer outputConsumer, Map<File, String> outputs) throws IOException {
+        for (Map.Entry<File, String> entry : outputs.entrySet()) {
+            outputConsumer.registerOutputFile(entry.getKey(), Collections.singleton(entry.getValue()));
+        }
+    }
+
+    private static boolean isRebuild(CompileContext context) {
+        return JavaBuilderUtil.isForcedRecompilationAllJavaModules(context) || (!JavaBuilderUtil.isCompileJavaIncrementally(context));
+    }
+
+    // Number of modules compiled concurrently. 0 means number of processors.
+    private static int getParallelism(@Nullable JpsSdk<?> sdk) {
+        ParamMap params = sdk != null ? ParamMap.getJpsParams(sdk.getSdkProperties()) : null;
+        String value = params != null ? params.get(PascalSdkData.Keys.COMPILER_PARALLEL_BUILDS.getKey()) : null;
+        try {
+            int res = value != null ? Integer.parseInt(value.trim()) : 1;
+            return res == 0 ? Runtime.getRuntime().availableProcessors() : res;
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    // Outputs of targets compiled by the scheduler during a build session
+    private static class ScheduledBuild {
+        private final Map<String, Map<File, String>> outputs = new ConcurrentHashMap<String, Map<File, String>>();
+    }
+
+    /**
+     * Each module is compiled by its own compiler invocation into its own output directory. All affected modules are compiled
+     * when the first of them is built. Subsequent calls for other modules only register the outputs.
+     */
+    private void buildScheduled(PascalTarget target, BuildOutputConsumer outputConsumer, CompileContext context, int parallelism) throws ProjectBuildException, IOException {
+        Map<File, String> outputs = getScheduledBuild(target, context, parallelism).outputs.get(target.getId());
+        if (outputs != null) {
+            registerOutputs(outputConsumer, outputs);
+        }
+    }
+
+    private synchronized ScheduledBuild getScheduledBuild(PascalTarget target, final CompileContext context, int parallelism) throws ProjectBuildException, IOException {
+        ScheduledBuild build = context.getUserData(SCHEDULED_BUILD);
+        if (build != null) {
+            return build;
+        }
+        build = new ScheduledBuild();
+        context.putUserData(SCHEDULED_BUILD, build);
+
+        final boolean isRebuild = isRebuild(context);
+        final Map<String, PascalTarget> targets = new LinkedHashMap<String, PascalTarget>();
+        final Map<String, List<File>> files = new HashMap<String, List<File>>();
+        for (PascalTarget pascalTarget : context.getProjectDescriptor().getBuildTargetIndex().getAllTargets(target.getPascalTargetType())) {
+            if (context.getScope().isAffected(pascalTarget)) {
+                targets.put(pascalTarget.getId(), pascalTarget);
+                files.put(pascalTarget.getId(), collectFilesToCompile(pascalTarget, context));
+            }
+        }
+        Map<String, List<String>> dependencies = new LinkedHashMap<String, List<String>>();
+        for (PascalTarget pascalTarget : targets.values()) {
+            List<String> deps = new ArrayList<String>();
+            for (BuildTarget<?> dep : pascalTarget.computeDependencies()) {
+                deps.add(dep.getId());
+            }
+            dependencies.put(pascalTarget.getId(), deps);
+        }
+
+        final Map<String, List<String>> targetDependencies = dependencies;
+        final ScheduledBuild result = build;
+        Set<String> skipped;
+        try {
+            skipped = new PascalBuildScheduler<String>(parallelism).run(dependencies, new PascalBuildScheduler.Task<String>() {
+                @Override
+                public boolean build(String id) {
+                    PascalTarget pascalTarget = targets.get(id);
+                    List<File> targetFiles = files.get(id);
+                    if (context.getCancelStatus().isCanceled()) {
+                        return false;
+                    }
+                    if (targetFiles.isEmpty() && !isRebuild) {
+                        log(context, String.format("No changes detected in module \"%s\"", id));
+                        return true;
+                    }
+                    // Dependencies are already compiled so their units are taken from output directories without sources
+                    List<File> sourcePaths = new ArrayList<File>();
+                    for (JpsModuleSourceRoot root : pascalTarget.getModule().getSourceRoots()) {
+                        sourcePaths.add(root.getFile());
+                    }
+                    addDependencyOutputDirs(sourcePaths, pascalTarget);
+                    Map<File, String> outputs = new HashMap<File, String>();
+                    try {
+                        // Units of dependencies shouldn't be rebuilt by the compiler of a dependent module
+                        boolean buildAll = isRebuild && targetDependencies.get(id).isEmpty();
+                        return compile(pascalTarget, targetFiles, sourcePaths, isRebuild, buildAll, outputs, context);
+                    } catch (Exception e) {
+                        LOG.warn("Error compiling module " + id, e);
+                        context.processMessage(new CompilerMessage(NAME, BuildMessage.Kind.ERROR, String.format("Error compiling module \"%s\": %s", id, e.getMessage())));
+                        return false;
+                    } finally {
+                        result.outputs.put(id, outputs);
+                    }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProjectBuildException(e);
+        }
+        for (String id : skipped) {
+            log(context, String.format("Skipping build of module \"%s\" because build of its dependency failed", id));
+        }
+        return build;
+    }
+
+    // Units of modules the target depends on directly or indirectly are taken from output directories of the modules
+    private static void addDependencyOutputDirs(List<File> result, PascalTarget target) {
+        Set<JpsModule> modules = new LinkedHashSet<JpsModule>();
+        collectModules(modules, target.getModule());
+        for (JpsModule module : modules) {
+            if (module != target.getModule()) {
+                File outputDir = JpsJavaExtensionService.getInstance().getOutputDirectory(module, target.isTests());
+                if (outputDir != null) {
+                    result.add(outputDir);
+                }
+            }
+        }
+    }
+
+    private static List<File> collectFilesToCompile(PascalTarget target, CompileContext context) throws IOException {
+        final List<File> result = new ArrayList<File>();
+        File mainFile = PascalBackendCompiler.getMainFile(ParamMap.getJpsParams(target.getModule().getProperties()));
+        if (mainFile != null) {
+            result.add(mainFile);
+        }
+        context.getProjectDescriptor().fsState.processFilesToRecompile(context, target, new FileProcessor<PascalSourceRootDescriptor, PascalTarget>() {
+            @Override
+            public boolean apply(PascalTarget target, File file, PascalSourceRootDescriptor root) throws IOException {
+                if (isPascalFile(file.getPath())) {
+                    result.add(file);
+                }
+                return true;
+            }
+        });
+        return result;
     }
 
     private boolean isDependencyTarget(PascalTarget target, CompileContext context) {
@@ -197,6 +529,17 @@ public class PascalTargetBuilder extends TargetBuilder<PascalSourceRootDescripto
         context.processMessage(new CompilerMessage(NAME, BuildMessage.Kind.INFO, text));
     }
 
+    private static void collectModules(Set<JpsModule> visited, JpsModule module) {
+        if ((null == module) || !visited.add(module)) {
+            return;
+        }
+        for (JpsDependencyElement element : module.getDependenciesList().getDependencies()) {
+            if (element instanceof JpsModuleDependency) {
+                collectModules(visited, ((JpsModuleDependency) element).getModule());
+            }
+        }
+    }
+
     private void getFiles(Set<JpsModule> visited, List<File> result, JpsModule module) {
         if ((null == module) || visited.contains(module)) {
             return;
@@ -0,0 +1,189 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Content addressed storage of compiled units. Key of a unit is a hash of contents and modification times of the unit's source
+ * and all sources it depends on according to unit graph, compiler executable and compiler options. So units compiled for another
+ * build configuration are restored from the cache instead of compiling when the configuration is used again.
+ * Modification times are part of the key as FPC recompiles a unit if modification time of its source differs from the one recorded
+ * in the compiled unit. So units whose sources were rewritten, e.g. by switching VCS branches, are not restored.
+ * Least recently used entries are removed when number of entries exceeds the limit.
+ */
+class PascalUnitCache {
+
+    private static final Logger LOG = Logger.getInstance(PascalUnitCache.class);
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private final File root;
+    private final String optionsHash;
+    // Content hashes and modification times of source files by path
+    private final Map<String, String> sourceStamps = new HashMap<String, String>();
+
+    /**
+     * @param optionsHash  hash of compiler executable and options returned by getOptionsHash()
+     */
+    PascalUnitCache(File root, String optionsHash) {
+        this.root = root;
+        this.optionsHash = optionsHash;
+    }
+
+    /**
+     * Returns hash of compiler executable and options
+     * @param options  compiler options which affect compiled units. Should not include paths to output directories and compiled file.
+     */
+    static String getOptionsHash(File compilerExecutable, List<String> options) {
+        StringBuilder sb = new StringBuilder(compilerExecutable.getAbsolutePath()).append('\n')
+                .append(compilerExecutable.length()).append('\n').append(compilerExecutable.lastModified()).append('\n');
+        for (String option : options) {
+            sb.append(option).append('\n');
+        }
+        return hash(sb.toString());
+    }
+
+    /**
+     * Returns key of the unit compiled from the file
+     * @param closure  the file and files it depends on
+     */
+    String getKey(Collection<String> closure) throws IOException {
+        StringBuilder sb = new StringBuilder(optionsHash);
+        // Sorted to not depend on order of uses clause
+        for (String path : new TreeSet<String>(closure)) {
+            String stamp = sourceStamps.get(path);
+            if (null == stamp) {
+                File file = new File(path);
+                stamp = hash(FileUtil.loadFileBytes(file)) + ":" + file.lastModified();
+                sourceStamps.put(path, stamp);
+            }
+            sb.append(stamp).append('\n');
+        }
+        return hash(sb.toString());
+    }
+
+    /**
+     * Copies compiled files of a unit from cache entry to output directory
+     * @return true if the cache contains the entry
+     */
+    boolean restore(String key, File outputDir) throws IOException {
+        File entry = getEntryDir(key);
+        File[] files = entry.listFiles();
+        if ((null == files) || (0 == files.length)) {
+            return false;
+        }
+        for (File file : files) {
+            FileUtil.copy(file, new File(outputDir, file.getName()));
+        }
+        entry.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Copies compiled files of the unit from output directory to cache entry if all of them exist.
+     * Compiled files are searched with the source file name and with the name in lower case as FPC names them.
+     */
+    void store(String key, String unitName, File outputDir, String[] extensions) throws IOException {
+        File entry = getEntryDir(key);
+        if (entry.isDirectory()) {
+            return;
+        }
+        String name = exist(outputDir, unitName, extensions) ? unitName : unitName.toLowerCase(Locale.ENGLISH);
+        if (!exist(outputDir, name, extensions)) {
+            return;
+        }
+        // Entry is written to a temporary directory and renamed so readers never see partially written entries
+        File temp = new File(entry.getParentFile(), entry.getName() + ".tmp" + Thread.currentThread().getId());
+        FileUtil.createDirectory(temp);
+        for (String ext : extensions) {
+            FileUtil.copy(new File(outputDir, name + ext), new File(temp, name + ext));
+        }
+        if (!temp.renameTo(entry)) {
+            FileUtil.delete(temp);
+        }
+    }
+
+    private static boolean exist(File dir, String name, String[] extensions) {
+        for (String ext : extensions) {
+            if (!new File(dir, name + ext).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes least recently used entries above the limit
+     */
+    void evict() {
+        List<File> entries = new ArrayList<File>();
+        File[] shards = root.listFiles();
+        if (shards != null) {
+            for (File shard : shards) {
+                File[] files = shard.listFiles();
+                if (files != null) {
+                    entries.addAll(Arrays.asList(files));
+                }
+            }
+        }
+        if (entries.size() <= MAX_ENTRIES) {
+            return;
+        }
+        final Map<File, Long> times = new HashMap<File, Long>();
+        for (File entry : entries) {
+            times.put(entry, entry.lastModified());
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                return times.get(o1).compareTo(times.get(o2));
+            }
+        });
+        for (File entry : entries.subList(0, entries.size() - MAX_ENTRIES)) {
+            if (!FileUtil.delete(entry)) {
+                LOG.info("Can't delete unit cache entry: " + entry);
+            }
+        }
+    }
+
+    private File getEntryDir(String key) {
+        return new File(new File(root, key.substring(0, 2)), key);
+    }
+
+    private static String hash(String text) {
+        try {
+            return hash(text.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependencies between source files of a module built from uses clauses and include directives.
+ * Stored between builds with modification time of each file to find units which should be recompiled.
+ * Stored graph is discarded when source paths or hash of compiler options change as all units should be recompiled in that case.
+ * Conditional compilation is not taken into account so dependencies can only be overestimated.
+ * Units which are not found in the module's source paths (e.g. SDK units) are ignored.
+ */
+class PascalUnitGraph {
+
+    private static final Logger LOG = Logger.getInstance(PascalUnitGraph.class);
+
+    private static final String HEADER = "#paths ";
+    private static final String OPTIONS = " #options ";
+    private static final String SEPARATOR = "|";
+    private static final String[] UNIT_EXTENSIONS = {".pas", ".pp", ".p"};
+    private static final String[] INCLUDE_EXTENSIONS = {"", ".inc", ".pp", ".pas"};
+
+    private static class Entry {
+        private final long timestamp;
+        private final List<String> dependencies;
+
+        private Entry(long timestamp, List<String> dependencies) {
+            this.timestamp = timestamp;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final String pathsHash;
+    private final String optionsHash;
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    // Graph is not loaded from previous build
+    private boolean isNew = true;
+    // Files of source directories by lower case name
+    private Map<String, File> sourceFiles;
+
+    private PascalUnitGraph(Collection<File> sourceDirs, String optionsHash) {
+        this.pathsHash = Integer.toHexString(sourceDirs.hashCode());
+        this.optionsHash = optionsHash;
+    }
+
+    /**
+     * Loads graph stored by previous build. The graph is new if there is no stored one or source paths or compiler options have been changed.
+     * @param optionsHash  hash of compiler executable and options the units are compiled with
+     */
+    static PascalUnitGraph load(File storage, Collection<File> sourceDirs, String optionsHash) {
+        PascalUnitGraph graph = new PascalUnitGraph(sourceDirs, optionsHash);
+        if (!storage.isFile()) {
+            return graph;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(storage), "UTF-8"));
+            try {
+                String line = reader.readLine();
+                if (!graph.getHeader().equals(line)) {
+                    return graph;
+                }
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\t", -1);
+                    List<String> deps = new ArrayList<String>();
+                    for (String dep : parts[2].split("\\" + SEPARATOR)) {
+                        if (dep.length() > 0) {
+                            deps.add(dep);
+                        }
+                    }
+                    graph.entries.put(parts[0], new Entry(Long.parseLong(parts[1]), deps));
+                }
+                graph.isNew = false;
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            LOG.info("Error loading unit graph from " + storage, e);
+            graph.entries.clear();
+        }
+        return graph;
+    }
+
+    void save(File storage) throws IOException {
+        FileUtil.createParentDirs(storage);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(storage), "UTF-8");
+        try {
+            writer.write(getHeader() + "\n");
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                StringBuilder sb = new StringBuilder();
+                for (String dep : entry.getValue().dependencies) {
+                    sb.append(sb.length() > 0 ? SEPARATOR : "").append(dep);
+                }
+                writer.write(entry.getKey() + "\t" + entry.getValue().timestamp + "\t" + sb + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private String getHeader() {
+        return HEADER + pathsHash + OPTIONS + optionsHash;
+    }
+
+    boolean isNew() {
+        return isNew;
+    }
+
+    /**
+     * Brings the graph up to date with files reachable from the root file. Files changed since the graph was saved are rescanned.
+     * Files which are no longer reachable are removed from the graph.
+     * @return paths of reachable files which are new, changed or depend on a removed file
+     */
+    Set<String> update(File root, Collection<File> sourceDirs) {
+        Map<String, Entry> old = entries;
+        entries = new LinkedHashMap<String, Entry>();
+        sourceFiles = null;
+        Set<String> changed = new LinkedHashSet<String>();
+        if (!root.isFile()) {
+            return changed;
+        }
+        Deque<File> queue = new ArrayDeque<File>();
+        queue.add(root);
+        Set<String> visited = new LinkedHashSet<String>();
+        visited.add(root.getAbsolutePath());
+        while (!queue.isEmpty()) {
+            File file = queue.poll();
+            String path = file.getAbsolutePath();
+            Entry entry = old.get(path);
+            if ((null == entry) || (entry.timestamp != file.lastModified())) {
+                entry = scan(file, sourceDirs);
+                changed.add(path);
+            }
+            entries.put(path, entry);
+            for (String dep : entry.dependencies) {
+                File depFile = new File(dep);
+                if (!depFile.isFile()) {
+                    changed.add(path);
+                } else if (visited.add(dep)) {
+                    queue.add(depFile);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the given files and all files which depend on them directly or via other files
+     */
+    Set<String> getAffected(Set<String> changed) {
+        Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            for (String dep : entry.getValue().dependencies) {
+                List<String> list = dependents.get(dep);
+                if (null == list) {
+                    list = new ArrayList<String>();
+                    dependents.put(dep, list);
+                }
+                list.add(entry.getKey());
+            }
+        }
+        Set<String> result = new LinkedHashSet<String>(changed);
+        Deque<String> queue = new ArrayDeque<String>(changed);
+        while (!queue.isEmpty()) {
+            List<String> list = dependents.get(queue.poll());
+            if (list != null) {
+                for (String dependent : list) {
+                    if (result.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns paths of files in the graph
+     */
+    Collection<String> getFiles() {
+        return entries.keySet();
+    }
+
+    /**
+     * Returns the file and all files it depends on directly or via other files
+     */
+    Set<String> getClosure(String path) {
+        Set<String> result = new LinkedHashSet<String>();
+        result.add(path);
+        Deque<String> queue = new ArrayDeque<String>(result);
+        while (!queue.isEmpty()) {
+            Entry entry = entries.get(queue.poll());
+            if (entry != null) {
+                for (String dep : entry.dependencies) {
+                    if (result.add(dep)) {
+                        queue.add(dep);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    static boolean isUnitFile(String path) {
+        String name = path.toLowerCase(Locale.ENGLISH);
+        for (String ext : UNIT_EXTENSIONS) {
+            if (name.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Entry scan(File file, Collection<File> sourceDirs) {
+        List<String> units = new ArrayList<String>();
+        List<String> includes = new ArrayList<String>();
+        long timestamp = file.lastModified();
+        try {
+            parse(FileUtil.loadFile(file, "ISO-8859-1"), units, includes);
+        } catch (IOException e) {
+            LOG.info("Error reading " + file, e);
+        }
+        List<String> deps = new ArrayList<String>(units.size() + includes.size());
+        for (String unit : units) {
+            File unitFile = findSourceFile(unit, UNIT_EXTENSIONS, sourceDirs);
+            if (unitFile != null) {
+                deps.add(unitFile.getAbsolutePath());
+            }
+        }
+        for (String include : includes) {
+            File includeFile = findInclude(file.getParentFile(), include, sourceDirs);
+            if (includeFile != null) {
+                deps.add(includeFile.getAbsolutePath());
+            }
+        }
+        return new Entry(timestamp, deps);
+    }
+
+    private File findInclude(File dir, String name, Collection<File> sourceDirs) {
+        for (String ext : INCLUDE_EXTENSIONS) {
+            File file = new File(dir, name + ext);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        return findSourceFile(name, INCLUDE_EXTENSIONS, sourceDirs);
+    }
+
+    private File findSourceFile(String name, String[] extensions, Collection<File> sourceDirs) {
+        if (null == sourceFiles) {
+            sourceFiles = new HashMap<String, File>();
+            for (File dir : sourceDirs) {
+                File[] files = dir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        String key = file.getName().toLowerCase(Locale.ENGLISH);
+                        if (!sourceFiles.containsKey(key) && file.isFile()) {
+                            sourceFiles.put(key, file);
+                        }
+                    }
+                }
+            }
+        }
+        String key = name.replace('\\', '/').toLowerCase(Locale.ENGLISH);
+        for (String ext : extensions) {
+            File file = sourceFiles.get(key + ext);
+            if (file != null) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extracts names of used units and include files from Pascal source.
+     * Files specified with "in" in uses clause are added to includes as they are located the same way.
+     */
+    static void parse(CharSequence text, List<String> units, List<String> includes) {
+        int len = text.length();
+        int i = 0;
+        boolean inUses = false;
+        boolean inName = false;
+        while (i < len) {
+            char c = text.charAt(i);
+            if ('{' == c) {
+                int end = indexOf(text, "}", i + 1);
+                addInclude(text, i + 1, end, includes);
+                i = end + 1;
+            } else if (('(' == c) && (i + 1 < len) && ('*' == text.charAt(i + 1))) {
+                int end = indexOf(text, "*)", i + 2);
+                addInclude(text, i + 2, end, includes);
+                i = end + 2;
+            } else if (('/' == c) && (i + 1 < len) && ('/' == text.charAt(i + 1))) {
+                i = indexOf(text, "\n", i + 2);
+            } else if ('\'' == c) {
+                int end = indexOf(text, "'", i + 1);
+                if (inUses && !inName) {
+                    includes.add(text.subSequence(i + 1, end).toString());
+                }
+                i = end + 1;
+            } else if (Character.isLetter(c) || ('_' == c) || ('&' == c)) {
+                int start = i;
+                while ((i < len) && isNameChar(text.charAt(i))) {
+                    i++;
+                }
+                String word = text.subSequence(start, i).toString();
+                if (inUses) {
+                    if ("in".equalsIgnoreCase(word) && inName) {
+                        inName = false;
+                    } else if (!inName) {
+                        units.add(word.startsWith("&") ? word.substring(1) : word);
+                        inName = true;
+                    }
+                } else if ("uses".equalsIgnoreCase(word)) {
+                    inUses = true;
+                    inName = false;
+                }
+            } else {
+                if (';' == c) {
+                    inUses = false;
+                } else if (',' == c) {
+                    inName = false;
+                }
+                i++;
+            }
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || ('_' == c) || ('.' == c) || ('&' == c);
+    }
+
+    // Index of the substring or length of text if not found
+    private static int indexOf(CharSequence text, String str, int from) {
+        for (int i = from; i <= text.length() - str.length(); i++) {
+            if (text.charAt(i) == str.charAt(0) && text.subSequence(i, i + str.length()).toString().equals(str)) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    // Adds file name of {$I name} or {$INCLUDE name} directive. {$I+}, {$I-} and {$I %DATE%} are not includes.
+    private static void addInclude(CharSequence text, int start, int end, List<String> includes) {
+        if ((start >= end) || (text.charAt(start) != '$')) {
+            return;
+        }
+        String directive = text.subSequence(start + 1, end).toString().trim();
+        int nameStart = 0;
+        while ((nameStart < directive.length()) && Character.isLetter(directive.charAt(nameStart))) {
+            nameStart++;
+        }
+        String name = directive.substring(0, nameStart);
+        if (!"i".equalsIgnoreCase(name) && !"include".equalsIgnoreCase(name)) {
+            return;
+        }
+        String file = directive.substring(nameStart).trim();
+        if (file.startsWith("'") && file.endsWith("'") && (file.length() > 1)) {
+            file = file.substring(1, file.length() - 1);
+        }
+        if ((file.length() > 0) && (file.charAt(0) != '+') && (file.charAt(0) != '-') && (file.charAt(0) != '%')) {
+            includes.add(file);
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.siberika.idea.pascal.jps.builder.DelphiCompilerProcessAdapter;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkUtil;
-import com.siberika.idea.pascal.jps.util.FileUtil;
 import com.siberika.idea.pascal.jps.util.ParamMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -85,15 +84,15 @@ public class DelphiBackendCompiler extends PascalBackendCompiler {
             commandLine.add(COMPILER_SETTING_OPATH_EXE + outputDirExe);
         }
 
-        for (File sourceRoot : FileUtil.retrievePaths(moduleLibFiles)) {
-            addLibPathToCmdLine(commandLine, sourceRoot, COMPILER_SETTING_SRCPATH, COMPILER_SETTING_INCPATH);
-        }
-
-        for (File sdkPath : FileUtil.retrievePaths(sdkFiles)) {
-            addLibPathToCmdLine(commandLine, sdkPath, COMPILER_SETTING_SRCPATH, COMPILER_SETTING_INCPATH);
-        }
+        addSearchPaths(commandLine, moduleLibFiles, sdkFiles, COMPILER_SETTING_SRCPATH, COMPILER_SETTING_INCPATH);
         return true;
     }
 
+    // Response files of dcc are split by whitespace
+    @Override
+    protected String getResponseFileLine(String argument) {
+        return argument.indexOf(' ') >= 0 ? '"' + argument + '"' : argument;
+    }
+
 }
 
@@ -5,7 +5,6 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.siberika.idea.pascal.jps.builder.FPCCompilerProcessAdapter;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkUtil;
-import com.siberika.idea.pascal.jps.util.FileUtil;
 import com.siberika.idea.pascal.jps.util.ParamMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -48,6 +47,11 @@ public class FPCBackendCompiler extends PascalBackendCompiler {
         return ".ppu";
     }
 
+    @Override
+    public String[] getUnitOutputExts() {
+        return new String[] {".ppu", ".o"};
+    }
+
     @Override
     protected boolean createStartupCommandImpl(String sdkHomePath, String moduleName, String outputDirExe, String outputDirUnit,
                                           List<File> sdkFiles, List<File> moduleLibFiles, boolean isRebuild,
@@ -70,13 +74,7 @@ public class FPCBackendCompiler extends PascalBackendCompiler {
             commandLine.add(COMPILER_SETTING_OPATH_UNIT + outputDirUnit);
         }
 
-        for (File sourceRoot : FileUtil.retrievePaths(moduleLibFiles)) {
-            addLibPathToCmdLine(commandLine, sourceRoot, COMPILER_SETTING_SRCPATH, COMPILER_SETTING_INCPATH);
-        }
-
-        for (File sdkPath : FileUtil.retrievePaths(sdkFiles)) {
-            addLibPathToCmdLine(commandLine, sdkPath, COMPILER_SETTING_SRCPATH, COMPILER_SETTING_INCPATH);
-        }
+        addSearchPaths(commandLine, moduleLibFiles, sdkFiles, COMPILER_SETTING_SRCPATH, COMPILER_SETTING_INCPATH);
 
         if (pascalSdkData != null) {
             String[] compilerOptions = pascalSdkData.get(PascalSdkData.Keys.COMPILER_OPTIONS.getKey()).split("\\s+");
@@ -1,6 +1,8 @@
 package com.siberika.idea.pascal.jps.compiler;
 
 import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.siberika.idea.pascal.jps.JpsPascalBundle;
 import com.siberika.idea.pascal.jps.model.JpsPascalModuleType;
@@ -20,7 +22,16 @@ import java.util.List;
  */
 public abstract class PascalBackendCompiler {
 
+    private static final Logger LOG = Logger.getInstance(PascalBackendCompiler.class);
+
+    private static final String RESPONSE_FILE = "search-paths.rsp";
+    private static final String RESPONSE_FILE_KEY = "search-paths.key";
+    // Separates list of roots from the roots which didn't exist when response file was written
+    private static final String MISSING_ROOTS = "#missing\n";
+
     protected final CompilerMessager compilerMessager;
+    private File responseFileDir;
+    private boolean regenerateResponseFile;
 
     public PascalBackendCompiler(CompilerMessager compilerMessager) {
         this.compilerMessager = compilerMessager;
@@ -36,6 +47,11 @@ public abstract class PascalBackendCompiler {
 
     public abstract String getCompiledUnitExt();
 
+    // Extensions of files produced by compilation of a unit
+    public String[] getUnitOutputExts() {
+        return new String[] {getCompiledUnitExt()};
+    }
+
     public String[] createStartupCommand(final String sdkHomePath, final String moduleName, final String outputDir,
                                          final List<File> sdkLibFiles, final List<File> moduleLibFiles,
                                          final List<File> files, @Nullable final ParamMap moduleData,
@@ -70,12 +86,23 @@ public abstract class PascalBackendCompiler {
         return commandLine.toArray(new String[commandLine.size()]);
     }
 
+    /**
+     * Search paths will be passed to the compiler in a response file stored in the directory. The file is reused by subsequent builds
+     * while the list of library and SDK roots stays the same and roots which didn't exist are still missing so existing roots are not
+     * checked again. Roots deleted since the file was written stay in it as compilers ignore missing search paths.
+     * @param regenerate  the file should be written anew, e.g. on rebuild
+     */
+    public void setResponseFileDir(@Nullable File responseFileDir, boolean regenerate) {
+        this.responseFileDir = responseFileDir;
+        this.regenerateResponseFile = regenerate;
+    }
+
     public static File getMainFile(ParamMap moduleData) {
         String fileName = moduleData != null ? moduleData.get(JpsPascalModuleType.USERDATA_KEY_MAIN_FILE.toString()) : null;
         return fileName != null ? new File(fileName) : null;
     }
 
-    static String getExeOutputPath(ParamMap moduleData) {
+    public static String getExeOutputPath(ParamMap moduleData) {
         return moduleData != null ? moduleData.get(JpsPascalModuleType.USERDATA_KEY_EXE_OUTPUT_PATH.toString()) : null;
     }
 
@@ -87,6 +114,91 @@ public abstract class PascalBackendCompiler {
         }
     }
 
+    /**
+     * Adds unit and include search paths for the module's libraries and SDK to command line directly or as a response file
+     */
+    protected void addSearchPaths(ArrayList<String> commandLine, List<File> moduleLibFiles, List<File> sdkFiles,
+                                  String compilerSettingSrcpath, String compilerSettingIncpath) {
+        File responseFile = responseFileDir != null ? new File(responseFileDir, RESPONSE_FILE) : null;
+        File keyFile = responseFileDir != null ? new File(responseFileDir, RESPONSE_FILE_KEY) : null;
+        String key = null;
+        if (responseFile != null) {
+            StringBuilder sb = new StringBuilder(compilerSettingSrcpath).append('\n').append(compilerSettingIncpath).append('\n');
+            for (File file : moduleLibFiles) {
+                sb.append(file.getPath()).append('\n');
+            }
+            sb.append('\n');
+            for (File file : sdkFiles) {
+                sb.append(file.getPath()).append('\n');
+            }
+            key = sb.toString();
+            try {
+                if (!regenerateResponseFile && responseFile.isFile() && keyFile.isFile() && isKeyValid(key, FileUtil.loadFile(keyFile, "UTF-8"))) {
+                    commandLine.add("@" + responseFile.getPath());
+                    return;
+                }
+            } catch (IOException e) {
+                LOG.info("Error reading response file key " + keyFile, e);
+            }
+        }
+
+        ArrayList<String> paths = new ArrayList<String>();
+        for (File sourceRoot : com.siberika.idea.pascal.jps.util.FileUtil.retrievePaths(moduleLibFiles)) {
+            addLibPathToCmdLine(paths, sourceRoot, compilerSettingSrcpath, compilerSettingIncpath);
+        }
+        for (File sdkPath : com.siberika.idea.pascal.jps.util.FileUtil.retrievePaths(sdkFiles)) {
+            addLibPathToCmdLine(paths, sdkPath, compilerSettingSrcpath, compilerSettingIncpath);
+        }
+
+        if (responseFile != null) {
+            StringBuilder sb = new StringBuilder();
+            for (String path : paths) {
+                sb.append(getResponseFileLine(path)).append('\n');
+            }
+            StringBuilder missing = new StringBuilder(MISSING_ROOTS);
+            for (File file : moduleLibFiles) {
+                addMissing(missing, file);
+            }
+            for (File file : sdkFiles) {
+                addMissing(missing, file);
+            }
+            try {
+                FileUtil.writeToFile(responseFile, sb.toString());
+                FileUtil.writeToFile(keyFile, key + missing);
+                commandLine.add("@" + responseFile.getPath());
+                return;
+            } catch (IOException e) {
+                LOG.info("Error writing response file " + responseFile, e);
+                FileUtil.delete(keyFile);
+            }
+        }
+        commandLine.addAll(paths);
+    }
+
+    private static void addMissing(StringBuilder sb, File root) {
+        if (!root.exists()) {
+            sb.append(root.getPath()).append('\n');
+        }
+    }
+
+    // Stored key is valid if it has the same roots and none of the roots missing when it was written has been created
+    private static boolean isKeyValid(String key, String stored) {
+        if (!stored.startsWith(key) || !stored.startsWith(MISSING_ROOTS, key.length())) {
+            return false;
+        }
+        for (String path : StringUtil.split(stored.substring(key.length() + MISSING_ROOTS.length()), "\n")) {
+            if (new File(path).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns representation of the command line argument in response file
+    protected String getResponseFileLine(String argument) {
+        return argument;
+    }
+
     protected static String getMessage(String moduleName, @PropertyKey(resourceBundle = JpsPascalBundle.JPSBUNDLE)String msgId, Object...args) {
         return JpsPascalBundle.message(msgId, args) + (moduleName != null ? " (" + JpsPascalBundle.message("general.module", moduleName) + ")" : "");
     }
@@ -18,12 +18,16 @@ public class PascalSdkData implements SdkAdditionalData {
     public static final String SDK_DATA_TRUE = "1";
 
     private static final Map<String, Object> DEFAULTS_MAP = new ImmutableMap.Builder<String, Object>()
+            .put(Keys.COMPILER_PARALLEL_BUILDS.getKey(), "1")
+            .put(Keys.COMPILER_UNIT_CACHE.getKey(), "0")
+            .put(Keys.COMPILER_RESPONSE_FILE.getKey(), "0")
             .put(Keys.DEBUGGER_BACKEND.getKey(), DEBUGGER_BACKENDS[SystemInfo.isMac ? 1 : 0])
             .put(Keys.DEBUGGER_REDIRECT_CONSOLE.getKey(), "1")
             .put(Keys.DEBUGGER_BREAK_FULL_NAME.getKey(), "1")
             .put(Keys.DEBUGGER_RETRIEVE_CHILDS.getKey(), "1")
             .put(Keys.DEBUGGER_USE_GDBINIT.getKey(), "0")
             .put(Keys.DEBUGGER_RESOLVE_NAMES.getKey(), "1")
+            .put(Keys.DEBUGGER_NON_STOP.getKey(), "0")
             .build();
     private static final String LLDB_MI_DEFAULT_PATH = "/Applications/Xcode.app/Contents/Developer/usr/bin/lldb-mi";
 
@@ -36,6 +40,9 @@ public class PascalSdkData implements SdkAdditionalData {
         COMPILER_FAMILY("compilerFamily"),
         COMPILER_NAMESPACES("compilerNamespaces"),
         COMPILER_OPTIONS("compilerOptions"),
+        COMPILER_PARALLEL_BUILDS("compilerParallelBuilds"),
+        COMPILER_UNIT_CACHE("compilerUnitCache"),
+        COMPILER_RESPONSE_FILE("compilerResponseFile"),
         DECOMPILER_CACHE("decompilerCache"),
         DECOMPILER_COMMAND("decompilerCommand"),
 
@@ -49,6 +56,7 @@ public class PascalSdkData implements SdkAdditionalData {
         DEBUGGER_RESOLVE_NAMES("debuggerResolveNames"),
         DEBUGGER_CALL_GETTERS("debuggerCallGetters"),
         DEBUGGER_ASM_FORMAT("debuggerAsmFormat"),
+        DEBUGGER_NON_STOP("debuggerNonStop"),
         DELPHI_IS_STARTER("delphiIsStarter")
         ;
         private final String key;
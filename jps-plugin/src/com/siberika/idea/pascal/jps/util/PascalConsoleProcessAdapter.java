@@ -5,17 +5,22 @@ import com.intellij.execution.process.ProcessEvent;
 import com.intellij.openapi.util.Key;
 
 public abstract class PascalConsoleProcessAdapter extends ProcessAdapter {
-    private StringBuilder sb = new StringBuilder();
+    // Incomplete last line of output
+    private final StringBuilder sb = new StringBuilder();
 
     abstract protected boolean onLine(String text);
 
     @Override
     public void onTextAvailable(ProcessEvent event, Key outputType) {
         String str = event.getText();
-        sb.append(str);
-        if (str.endsWith("\r\n") || str.endsWith("\n")) {
+        int start = 0;
+        int end;
+        while ((end = str.indexOf('\n', start)) >= 0) {
+            sb.append(str, start, end + 1);
             doProcessLine();
+            start = end + 1;
         }
+        sb.append(str, start, str.length());
     }
 
     @Override
@@ -28,7 +33,7 @@ public abstract class PascalConsoleProcessAdapter extends ProcessAdapter {
 
     private void doProcessLine() {
         onLine(sb.toString());
-        sb = new StringBuilder();
+        sb.setLength(0);
     }
 
 }
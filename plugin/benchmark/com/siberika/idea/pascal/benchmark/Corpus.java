@@ -0,0 +1,62 @@
+package com.siberika.idea.pascal.benchmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Sources benchmarks are run against: Pascal files from test data or a synthetic unit.
+ */
+class Corpus {
+
+    static final String CORPUS = "corpus";
+    static final String SYNTHETIC = "synthetic";
+
+    // Number of classes in synthetic unit
+    private static final int SYNTHETIC_CLASSES = Integer.getInteger("pascal.benchmark.syntheticClasses", 300);
+
+    static class Source {
+        final String name;
+        final String text;
+
+        private Source(String name, String text) {
+            this.name = name;
+            this.text = text;
+        }
+    }
+
+    static String getTestDataPath() {
+        return System.getProperty("pascal.benchmark.testData", "testData");
+    }
+
+    /**
+     * Loads sources of the given kind
+     * @param kind  CORPUS or SYNTHETIC
+     */
+    @NotNull
+    static List<Source> load(@NotNull String kind) throws IOException {
+        if (SYNTHETIC.equals(kind)) {
+            return Collections.singletonList(new Source("synthetic.pas", SyntheticUnitGenerator.generate("synthetic", SYNTHETIC_CLASSES)));
+        } else if (CORPUS.equals(kind)) {
+            List<Source> res = new ArrayList<Source>();
+            File root = new File(getTestDataPath());
+            for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.pas"), root)) {
+                String path = FileUtil.getRelativePath(root, file);
+                res.add(new Source(path != null ? FileUtil.toSystemIndependentName(path) : file.getName(),
+                        StringUtil.convertLineSeparators(FileUtil.loadFile(file))));
+            }
+            if (res.isEmpty()) {
+                throw new IOException("No Pascal files found in " + root.getAbsolutePath());
+            }
+            return res;
+        }
+        throw new IllegalArgumentException("Unknown source kind: " + kind);
+    }
+}
@@ -0,0 +1,106 @@
+package com.siberika.idea.pascal.benchmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Parsing of debugger output. "transcript" uses recorded MI sessions from test data, "children" and "memory" use
+ * single big -var-list-children and -data-read-memory results of "elements" entries.
+ * Results are accessed the way the debugger does so lazily converted values are accounted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GdbMiParserBenchmark {
+
+    private static final String TRANSCRIPT = "transcript";
+    private static final String CHILDREN = "children";
+    private static final String MEMORY = "memory";
+
+    @Param({TRANSCRIPT, CHILDREN, MEMORY})
+    public String source;
+
+    @Param({"10000"})
+    public int elements;
+
+    private List<String> lines;
+
+    @Setup
+    public void setup() throws IOException {
+        if (TRANSCRIPT.equals(source)) {
+            lines = loadTranscripts();
+        } else if (CHILDREN.equals(source)) {
+            lines = singleLine(generateChildren(elements));
+        } else if (MEMORY.equals(source)) {
+            lines = singleLine(generateMemory(elements));
+        } else {
+            throw new IllegalArgumentException("Unknown source: " + source);
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String line : lines) {
+            GdbMiLine res = GdbMiParser.parseLine(line);
+            blackhole.consume(res.getResults().getValue("children"));
+            blackhole.consume(res.getResults().getValue("memory"));
+            blackhole.consume(res.getResults().getValue("msg"));
+        }
+    }
+
+    private static List<String> loadTranscripts() throws IOException {
+        List<String> res = new ArrayList<String>();
+        File root = new File(Corpus.getTestDataPath(), "debugger");
+        for (File file : FileUtil.findFilesByMask(Pattern.compile(".*\\.mi"), root)) {
+            for (String line : StringUtil.splitByLines(StringUtil.convertLineSeparators(FileUtil.loadFile(file)))) {
+                res.add(line + "\n");
+            }
+        }
+        if (res.isEmpty()) {
+            throw new IOException("No MI transcripts found in " + root.getAbsolutePath());
+        }
+        return res;
+    }
+
+    private static List<String> singleLine(String line) {
+        List<String> res = new ArrayList<String>(1);
+        res.add(line);
+        return res;
+    }
+
+    private static String generateChildren(int count) {
+        StringBuilder sb = new StringBuilder("^done,numchild=\"").append(count).append("\",children=[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? "," : "").append("child={name=\"l%ARR.").append(i).append("\",exp=\"").append(i)
+                    .append("\",numchild=\"0\",value=\"").append(i * 31).append("\",type=\"LONGINT\",thread-id=\"1\"}");
+        }
+        return sb.append("],has_more=\"0\"\n").toString();
+    }
+
+    private static String generateMemory(int count) {
+        StringBuilder sb = new StringBuilder("^done,addr=\"0x00007fffffffe0a0\",nr-bytes=\"").append(count)
+                .append("\",total-bytes=\"").append(count).append("\",memory=[{addr=\"0x00007fffffffe0a0\",data=[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? "," : "").append(String.format("\"0x%02x\"", i & 0xFF));
+        }
+        return sb.append("]}]\n").toString();
+    }
+}
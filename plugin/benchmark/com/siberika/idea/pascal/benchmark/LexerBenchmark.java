@@ -0,0 +1,68 @@
+package com.siberika.idea.pascal.benchmark;
+
+import com.intellij.lexer.FlexAdapter;
+import com.intellij.openapi.util.Computable;
+import com.siberika.idea.pascal.lang.lexer.PascalFlexLexerImpl;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing of whole sources with conditional compilation handling. "tokens" counter reports tokens per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LexerBenchmark extends PascalBenchmarkState {
+
+    @Param({Corpus.CORPUS, Corpus.SYNTHETIC})
+    public String source;
+
+    private List<Corpus.Source> sources;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Override
+    protected void prepare() throws Exception {
+        sources = Corpus.load(source);
+    }
+
+    @Benchmark
+    public void lex(final Tokens counter, final Blackhole blackhole) {
+        runReadAction(new Computable<Object>() {
+            @Override
+            public Object compute() {
+                for (Corpus.Source src : sources) {
+                    FlexAdapter lexer = new FlexAdapter(new PascalFlexLexerImpl(null, getProject(), null, false));
+                    lexer.start(src.text);
+                    while (lexer.getTokenType() != null) {
+                        blackhole.consume(lexer.getTokenType());
+                        counter.tokens++;
+                        lexer.advance();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package com.siberika.idea.pascal.benchmark;
+
+import com.intellij.openapi.util.Computable;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.siberika.idea.pascal.PascalLanguage;
+import com.siberika.idea.pascal.PascalParserDefinition;
+import com.siberika.idea.pascal.lang.parser.PascalFileElementType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full parse of sources into PSI and stub tree building from parsed files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserBenchmark extends PascalBenchmarkState {
+
+    @Param({Corpus.CORPUS, Corpus.SYNTHETIC})
+    public String source;
+
+    private List<Corpus.Source> sources;
+    // Parsed files for stub building
+    private List<PsiFile> files;
+
+    @Override
+    protected void prepare() throws Exception {
+        sources = Corpus.load(source);
+        files = runReadAction(new Computable<List<PsiFile>>() {
+            @Override
+            public List<PsiFile> compute() {
+                List<PsiFile> res = new ArrayList<PsiFile>(sources.size());
+                for (Corpus.Source src : sources) {
+                    res.add(parse(src));
+                }
+                return res;
+            }
+        });
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) {
+        runReadAction(new Computable<Object>() {
+            @Override
+            public Object compute() {
+                for (Corpus.Source src : sources) {
+                    blackhole.consume(parse(src));
+                }
+                return null;
+            }
+        });
+    }
+
+    @Benchmark
+    public void buildStubs(final Blackhole blackhole) {
+        final PascalFileElementType elementType = (PascalFileElementType) PascalParserDefinition.PAS_FILE_ELEMENT_TYPE;
+        runReadAction(new Computable<Object>() {
+            @Override
+            public Object compute() {
+                for (PsiFile file : files) {
+                    StubElement stub = elementType.getBuilder().buildStubTree(file);
+                    blackhole.consume(stub);
+                }
+                return null;
+            }
+        });
+    }
+
+    // Parses the source and forces building of the whole tree
+    private PsiFile parse(Corpus.Source src) {
+        PsiFile file = PsiFileFactory.getInstance(getProject()).createFileFromText(src.name, PascalLanguage.INSTANCE, src.text);
+        PsiTreeUtil.getDeepestLast(file);
+        return file;
+    }
+}
@@ -0,0 +1,64 @@
+package com.siberika.idea.pascal.benchmark;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import com.intellij.testFramework.fixtures.IdeaProjectTestFixture;
+import com.intellij.testFramework.fixtures.IdeaTestFixtureFactory;
+import com.intellij.testFramework.fixtures.TestFixtureBuilder;
+import com.intellij.util.ThrowableRunnable;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Base benchmark state which sets up a light project fixture the same way as functional tests do.
+ */
+public abstract class PascalBenchmarkState {
+
+    private CodeInsightTestFixture fixture;
+
+    @Setup(Level.Trial)
+    public final void setUp() throws Throwable {
+        EdtTestUtil.runInEdtAndWait(new ThrowableRunnable<Throwable>() {
+            @Override
+            public void run() throws Throwable {
+                IdeaTestFixtureFactory factory = IdeaTestFixtureFactory.getFixtureFactory();
+                TestFixtureBuilder<IdeaProjectTestFixture> builder = factory.createLightFixtureBuilder();
+                fixture = factory.createCodeInsightFixture(builder.getFixture());
+                fixture.setTestDataPath(Corpus.getTestDataPath());
+                fixture.setUp();
+            }
+        });
+        prepare();
+    }
+
+    @TearDown(Level.Trial)
+    public final void tearDown() throws Throwable {
+        EdtTestUtil.runInEdtAndWait(new ThrowableRunnable<Throwable>() {
+            @Override
+            public void run() throws Throwable {
+                fixture.tearDown();
+            }
+        });
+    }
+
+    /**
+     * Called once per trial after the fixture is set up
+     */
+    protected abstract void prepare() throws Throwable;
+
+    protected CodeInsightTestFixture getFixture() {
+        return fixture;
+    }
+
+    protected Project getProject() {
+        return fixture.getProject();
+    }
+
+    protected static <T> T runReadAction(Computable<T> computable) {
+        return ApplicationManager.getApplication().runReadAction(computable);
+    }
+}
@@ -0,0 +1,42 @@
+package com.siberika.idea.pascal.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs all benchmarks or the ones matching the regular expression given as the first argument.
+ * Should be launched with the same classpath and VM options as plugin tests.
+ * IDEA and benchmark related system properties are passed to forked VMs.
+ */
+public class PascalBenchmarks {
+
+    private static final String[] PASSED_PROPERTIES = {"idea.", "java.awt.headless", "pascal.benchmark."};
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : PascalBenchmarks.class.getPackage().getName() + ".*Benchmark")
+                .warmupIterations(5)
+                .measurementIterations(10)
+                .forks(1)
+                .jvmArgsAppend(getForkedJvmArgs());
+        new Runner(options.build()).run();
+    }
+
+    private static String[] getForkedJvmArgs() {
+        List<String> res = new ArrayList<String>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            for (String prefix : PASSED_PROPERTIES) {
+                if (name.startsWith(prefix)) {
+                    res.add("-D" + name + "=" + System.getProperty(name));
+                    break;
+                }
+            }
+        }
+        return res.toArray(new String[res.size()]);
+    }
+}
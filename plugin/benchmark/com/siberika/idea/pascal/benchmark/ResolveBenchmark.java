@@ -0,0 +1,112 @@
+package com.siberika.idea.pascal.benchmark;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.impl.PsiModificationTrackerImpl;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.EdtTestUtil;
+import com.intellij.util.ThrowableRunnable;
+import com.siberika.idea.pascal.lang.parser.NamespaceRec;
+import com.siberika.idea.pascal.lang.psi.PasSubIdent;
+import com.siberika.idea.pascal.lang.psi.impl.PasField;
+import com.siberika.idea.pascal.lang.references.PasReferenceUtil;
+import com.siberika.idea.pascal.lang.references.ResolveContext;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolve of all identifiers in sources added to the fixture project. "resolves" counter reports identifiers resolved per second.
+ * PSI modification count is incremented before each invocation so resolve results memoized within blocks are not reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResolveBenchmark extends PascalBenchmarkState {
+
+    @Param({Corpus.CORPUS, Corpus.SYNTHETIC})
+    public String source;
+
+    private List<PasSubIdent> idents;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Resolves {
+        public long resolves;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            resolves = 0;
+        }
+    }
+
+    @Override
+    protected void prepare() throws Throwable {
+        final List<Corpus.Source> sources = Corpus.load(source);
+        final List<PsiFile> files = new ArrayList<PsiFile>(sources.size());
+        EdtTestUtil.runInEdtAndWait(new ThrowableRunnable<Throwable>() {
+            @Override
+            public void run() {
+                for (Corpus.Source src : sources) {
+                    files.add(getFixture().addFileToProject(src.name, src.text));
+                }
+            }
+        });
+        idents = runReadAction(new Computable<List<PasSubIdent>>() {
+            @Override
+            public List<PasSubIdent> compute() {
+                List<PasSubIdent> res = new ArrayList<PasSubIdent>();
+                for (PsiFile file : files) {
+                    res.addAll(PsiTreeUtil.findChildrenOfType(file, PasSubIdent.class));
+                }
+                return res;
+            }
+        });
+    }
+
+    @Setup(Level.Invocation)
+    public void dropCaches() throws Throwable {
+        EdtTestUtil.runInEdtAndWait(new ThrowableRunnable<Throwable>() {
+            @Override
+            public void run() {
+                ApplicationManager.getApplication().runWriteAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        PsiManager psiManager = PsiManager.getInstance(getProject());
+                        psiManager.dropResolveCaches();
+                        ((PsiModificationTrackerImpl) psiManager.getModificationTracker()).incCounter();
+                    }
+                });
+            }
+        });
+    }
+
+    @Benchmark
+    public void resolve(final Resolves counter, final Blackhole blackhole) {
+        runReadAction(new Computable<Object>() {
+            @Override
+            public Object compute() {
+                for (PasSubIdent ident : idents) {
+                    blackhole.consume(PasReferenceUtil.resolveExpr(NamespaceRec.fromElement(ident),
+                            new ResolveContext(PasField.TYPES_ALL, true), 0));
+                    counter.resolves++;
+                }
+                return null;
+            }
+        });
+    }
+}
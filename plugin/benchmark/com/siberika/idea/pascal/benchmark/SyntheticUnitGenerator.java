@@ -0,0 +1,78 @@
+package com.siberika.idea.pascal.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Generates a large unit with classes, methods, conditional compilation blocks and cross references between classes.
+ * Output depends only on parameters so results are comparable between runs.
+ */
+class SyntheticUnitGenerator {
+
+    private static final int FIELDS = 5;
+    private static final int METHODS = 8;
+
+    @NotNull
+    static String generate(@NotNull String unitName, int classCount) {
+        StringBuilder sb = new StringBuilder(classCount * 2500);
+        sb.append("unit ").append(unitName).append(";\n\n");
+        sb.append("{$DEFINE SYNTHETIC}\n\n");
+        sb.append("interface\n\nuses SysUtils, Classes;\n\n");
+        sb.append("type\n");
+        for (int i = 0; i < classCount; i++) {
+            appendClassDecl(sb, i);
+        }
+        sb.append("\nimplementation\n\n");
+        for (int i = 0; i < classCount; i++) {
+            appendClassImpl(sb, i);
+        }
+        sb.append("end.\n");
+        return sb.toString();
+    }
+
+    private static void appendClassDecl(StringBuilder sb, int index) {
+        String parent = index > 0 ? "TSynthetic" + (index - 1) : "TObject";
+        sb.append("  TSynthetic").append(index).append(" = class(").append(parent).append(")\n");
+        sb.append("  private\n");
+        for (int f = 0; f < FIELDS; f++) {
+            sb.append("    FField").append(f).append(": Integer;\n");
+        }
+        sb.append("    FNext: TSynthetic").append(index).append(";\n");
+        sb.append("  public\n");
+        for (int m = 0; m < METHODS; m++) {
+            sb.append("    function Method").append(m).append("(A: Integer; const S: string): Integer;");
+            sb.append(m == 0 && index > 0 ? " override;\n" : (m == 0 ? " virtual;\n" : "\n"));
+        }
+        sb.append("  {$IFDEF SYNTHETIC}\n");
+        sb.append("    property Field0: Integer read FField0 write FField0;\n");
+        sb.append("  {$ELSE}\n");
+        sb.append("    property Field0: Integer read FField1;\n");
+        sb.append("  {$ENDIF}\n");
+        sb.append("    property Next: TSynthetic").append(index).append(" read FNext;\n");
+        sb.append("  end;\n\n");
+    }
+
+    private static void appendClassImpl(StringBuilder sb, int index) {
+        String name = "TSynthetic" + index;
+        for (int m = 0; m < METHODS; m++) {
+            sb.append("function ").append(name).append(".Method").append(m).append("(A: Integer; const S: string): Integer;\n");
+            sb.append("var\n  I, Sum: Integer;\n  Obj: ").append(name).append(";\n");
+            sb.append("begin\n");
+            sb.append("  Sum := 0;\n");
+            sb.append("  Obj := Next;\n");
+            sb.append("  for I := 0 to A do\n  begin\n");
+            for (int f = 0; f < FIELDS; f++) {
+                sb.append("    Sum := Sum + FField").append(f).append(" * I;\n");
+            }
+            sb.append("  end;\n");
+            sb.append("  {$IF defined(SYNTHETIC) and not defined(UNDEFINED_").append(m).append(")}\n");
+            sb.append("  if Assigned(Obj) then\n    Sum := Sum + Obj.Field0 + Length(S);\n");
+            sb.append("  {$ELSE}\n  Sum := -1;\n  {$IFEND}\n");
+            if (m > 0) {
+                sb.append("  Result := Sum + Method").append(m - 1).append("(A - 1, S);\n");
+            } else {
+                sb.append("  Result := Sum;\n");
+            }
+            sb.append("end;\n\n");
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
+
+/**
+ * Receives result record of a debugger command. Called from debugger output processing thread.
+ */
+public interface CommandCallback {
+    void on(GdbMiLine res);
+}
@@ -0,0 +1,76 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Capabilities of a debugger backend. Initial set is defined by the backend and a feature is turned off when the debugger
+ * rejects a command which relies on it as unknown or malformed.
+ */
+public class DebuggerFeatures {
+
+    public enum Feature {
+        // -var-update for all variable objects with "*"
+        VAR_UPDATE_ALL,
+        // -var-list-children with range of children
+        VAR_LIST_CHILDREN_RANGE,
+        // -stack-list-frames with range of frames
+        STACK_FRAMES_RANGE,
+        // -exec-continue --all
+        CONTINUE_ALL_THREADS,
+        // -dprintf-insert
+        DPRINTF,
+        // -gdb-set non-stop on
+        NON_STOP
+    }
+
+    // Error code GDB gives for unknown commands
+    private static final String CODE_UNDEFINED_COMMAND = "undefined-command";
+    // GDB usage error for malformed arguments of a command, e.g. "-var-list-children: Usage: [PRINT_VALUES] NAME [FROM TO]"
+    private static final Pattern GDB_USAGE_ERROR = Pattern.compile("-[\\w-]+: Usage: .*", Pattern.DOTALL);
+    // LLDB-MI errors for malformed arguments and unknown commands
+    private static final String LLDB_ARGS_ERROR = "Command Args. Validation failed";
+    private static final String LLDB_UNKNOWN_COMMAND_ERROR = "not in Command Factory";
+
+    private final Set<Feature> features;
+
+    public DebuggerFeatures(Collection<Feature> features) {
+        this.features = Collections.synchronizedSet(features.isEmpty() ? EnumSet.noneOf(Feature.class) : EnumSet.copyOf(features));
+    }
+
+    public boolean has(Feature feature) {
+        return features.contains(feature);
+    }
+
+    public void disable(Feature feature) {
+        features.remove(feature);
+    }
+
+    /**
+     * Turns the feature off if the error result means the debugger doesn't support the command or its arguments.
+     * @return true if the feature was turned off
+     */
+    public boolean disableIfUnsupported(Feature feature, GdbMiLine res) {
+        if (isUnsupported(res)) {
+            disable(feature);
+            return true;
+        }
+        return false;
+    }
+
+    static boolean isUnsupported(GdbMiLine res) {
+        if (!"error".equals(res.getRecClass())) {
+            return false;
+        }
+        if (CODE_UNDEFINED_COMMAND.equals(res.getResults().getString("code"))) {
+            return true;
+        }
+        String msg = res.getResults().getString("msg");
+        return (msg != null) && (GDB_USAGE_ERROR.matcher(msg).matches() || msg.contains(LLDB_ARGS_ERROR) || msg.contains(LLDB_UNKNOWN_COMMAND_ERROR));
+    }
+}
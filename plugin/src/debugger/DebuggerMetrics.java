@@ -0,0 +1,211 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debugger protocol timings of a debug session: round trip time of commands, parse time of debugger output lines,
+ * time spent in result handlers and number of commands waiting for result.
+ * Only the latest entries are kept to limit memory usage.
+ */
+public class DebuggerMetrics {
+
+    private static final int MAX_TRACE_SIZE = 20000;
+    private static final int MAX_SAMPLES = 10000;
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    public static final String SERIES_PARSE = "<parse>";
+    public static final String SERIES_HANDLE = "<handle>";
+    public static final String SERIES_QUEUE = "<queue depth>";
+
+    private final long startTime = System.nanoTime();
+    private final ConcurrentMap<Long, Sent> inFlight = new ConcurrentHashMap<Long, Sent>();
+    // Samples by command name or series name
+    private final Map<String, Samples> samples = new TreeMap<String, Samples>();
+    private final Deque<TraceEntry> trace = new ArrayDeque<TraceEntry>();
+
+    private static class Sent {
+        private final String command;
+        private final long time;
+        private final int queueDepth;
+
+        private Sent(String command, long time, int queueDepth) {
+            this.command = command;
+            this.time = time;
+            this.queueDepth = queueDepth;
+        }
+    }
+
+    private static class TraceEntry {
+        private final long token;
+        private final String command;
+        private final long sentAt;
+        private final long rtt;
+        private final long parseTime;
+        private final long handleTime;
+        private final int queueDepth;
+        private final String recClass;
+
+        private TraceEntry(long token, Sent sent, long rtt, long parseTime, long handleTime, String recClass) {
+            this.token = token;
+            this.command = sent.command;
+            this.sentAt = sent.time;
+            this.rtt = rtt;
+            this.parseTime = parseTime;
+            this.handleTime = handleTime;
+            this.queueDepth = sent.queueDepth;
+            this.recClass = recClass;
+        }
+    }
+
+    // Ring buffer of latest values
+    private static class Samples {
+        private final long[] values = new long[MAX_SAMPLES];
+        private int count;
+        private int next;
+
+        private void add(long value) {
+            values[next] = value;
+            next = (next + 1) % MAX_SAMPLES;
+            count = Math.min(count + 1, MAX_SAMPLES);
+        }
+
+        private long[] sorted() {
+            long[] res = Arrays.copyOf(values, count);
+            Arrays.sort(res);
+            return res;
+        }
+    }
+
+    public static class Stat {
+        public final String name;
+        public final int count;
+        // Values of PERCENTILES followed by maximum
+        public final long[] values;
+
+        private Stat(String name, int count, long[] values) {
+            this.name = name;
+            this.count = count;
+            this.values = values;
+        }
+    }
+
+    public void commandSent(long token, String command) {
+        int queueDepth = inFlight.size();
+        inFlight.put(token, new Sent(getCommandName(command), System.nanoTime(), queueDepth));
+        addSample(SERIES_QUEUE, queueDepth);
+    }
+
+    public void commandFailed(long token) {
+        inFlight.remove(token);
+    }
+
+    public void lineParsed(long parseTime) {
+        addSample(SERIES_PARSE, parseTime);
+    }
+
+    /**
+     * Records result of a command
+     * @param parseTime   time spent parsing the result record
+     * @param handleTime  time spent in the result handler
+     */
+    public void resultReceived(GdbMiLine res, long receivedAt, long parseTime, long handleTime) {
+        Sent sent = res.getToken() != null ? inFlight.remove(res.getToken()) : null;
+        addSample(SERIES_HANDLE, handleTime);
+        if (null == sent) {
+            return;
+        }
+        long rtt = receivedAt - sent.time;
+        addSample(sent.command, rtt);
+        synchronized (trace) {
+            trace.addLast(new TraceEntry(res.getToken(), sent, rtt, parseTime, handleTime, res.getRecClass()));
+            if (trace.size() > MAX_TRACE_SIZE) {
+                trace.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Returns percentiles of commands round trip time and of parse and handling time in microseconds and of queue depth
+     */
+    public List<Stat> getStats() {
+        List<Stat> res = new ArrayList<Stat>();
+        synchronized (samples) {
+            for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+                long[] sorted = entry.getValue().sorted();
+                if (sorted.length == 0) {
+                    continue;
+                }
+                boolean time = !SERIES_QUEUE.equals(entry.getKey());
+                long[] values = new long[PERCENTILES.length + 1];
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    values[i] = convert(sorted[(int) Math.ceil(PERCENTILES[i] / 100 * sorted.length) - 1], time);
+                }
+                values[PERCENTILES.length] = convert(sorted[sorted.length - 1], time);
+                res.add(new Stat(entry.getKey(), sorted.length, values));
+            }
+        }
+        return res;
+    }
+
+    public static String[] getStatColumns() {
+        String[] res = new String[PERCENTILES.length + 1];
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            res[i] = String.format("p%d", (int) PERCENTILES[i]);
+        }
+        res[PERCENTILES.length] = "max";
+        return res;
+    }
+
+    /**
+     * Writes trace of command results as CSV. Times are in microseconds from start of the session.
+     */
+    public void exportTrace(Writer writer) throws IOException {
+        List<TraceEntry> entries;
+        synchronized (trace) {
+            entries = new ArrayList<TraceEntry>(trace);
+        }
+        writer.write("token,command,sent_us,rtt_us,parse_us,handle_us,queue_depth,result\n");
+        for (TraceEntry entry : entries) {
+            writer.write(String.format("%d,%s,%d,%d,%d,%d,%d,%s\n", entry.token, entry.command, toMicros(entry.sentAt - startTime),
+                    toMicros(entry.rtt), toMicros(entry.parseTime), toMicros(entry.handleTime), entry.queueDepth, entry.recClass));
+        }
+    }
+
+    private void addSample(String name, long value) {
+        synchronized (samples) {
+            Samples s = samples.get(name);
+            if (null == s) {
+                s = new Samples();
+                samples.put(name, s);
+            }
+            s.add(value);
+        }
+    }
+
+    private static long convert(long value, boolean time) {
+        return time ? toMicros(value) : value;
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    // Command without arguments
+    private static String getCommandName(String command) {
+        int end = command.indexOf(' ');
+        return end > 0 ? command.substring(0, end) : command;
+    }
+}
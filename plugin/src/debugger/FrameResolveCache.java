@@ -0,0 +1,68 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.xdebugger.XSourcePosition;
+import com.siberika.idea.pascal.lang.psi.impl.PasField;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Results of identifier name resolution in stack frames for a debug session.
+ * Results are kept per source position which also determines the routine and dropped for a file when its document is modified.
+ */
+public class FrameResolveCache {
+
+    private final Map<VirtualFile, FileEntry> files = new HashMap<VirtualFile, FileEntry>();
+
+    private static class FileEntry {
+        private final long stamp;
+        private final ConcurrentMap<Integer, ConcurrentMap<String, Collection<PasField>>> positions =
+                new ConcurrentHashMap<Integer, ConcurrentMap<String, Collection<PasField>>>();
+
+        private FileEntry(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Returns map of resolved fields by identifier name for the source position
+     */
+    @NotNull
+    public ConcurrentMap<String, Collection<PasField>> getFields(@NotNull XSourcePosition position) {
+        VirtualFile file = position.getFile();
+        long stamp = getModificationStamp(file);
+        FileEntry entry;
+        synchronized (files) {
+            entry = files.get(file);
+            if ((null == entry) || (entry.stamp != stamp)) {
+                entry = new FileEntry(stamp);
+                files.put(file, entry);
+            }
+        }
+        ConcurrentMap<String, Collection<PasField>> res = entry.positions.get(position.getOffset());
+        if (null == res) {
+            res = new ConcurrentHashMap<String, Collection<PasField>>();
+            ConcurrentMap<String, Collection<PasField>> existing = entry.positions.putIfAbsent(position.getOffset(), res);
+            res = existing != null ? existing : res;
+        }
+        return res;
+    }
+
+    public void clear() {
+        synchronized (files) {
+            files.clear();
+        }
+    }
+
+    private static long getModificationStamp(VirtualFile file) {
+        Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        return document != null ? document.getModificationStamp() : file.getModificationStamp();
+    }
+}
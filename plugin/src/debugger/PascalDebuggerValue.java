@@ -24,6 +24,9 @@ public class PascalDebuggerValue extends XValue {
     private final String value;
     private final Integer childrenCount;
     private final PasField.FieldType fieldType;
+    // Node the children are loaded into and number of children loaded into it so far
+    private XCompositeNode childrenNode;
+    private int childrenLoaded = 0;
 
     public PascalDebuggerValue(PascalXDebugProcess debugProcess, String name, String type, String value, Integer childrenCount, PasField.FieldType fieldType) {
         this.debugProcess = debugProcess;
@@ -65,10 +68,28 @@ public class PascalDebuggerValue extends XValue {
     @Override
     public void computeChildren(@NotNull XCompositeNode node) {
         if (debugProcess.getData().getBoolean(PascalSdkData.Keys.DEBUGGER_RETRIEVE_CHILDS)) {
-            debugProcess.computeValueChildren(name, node);
+            int from;
+            synchronized (this) {
+                if (node != childrenNode) {
+                    childrenNode = node;
+                    childrenLoaded = 0;
+                }
+                from = childrenLoaded;
+            }
+            debugProcess.computeValueChildren(this, node, from, childrenCount);
         } else {
             node.setErrorMessage(PascalBundle.message("debug.error.subfields.disabled"));
         }
     }
 
+    synchronized void onChildrenLoaded(XCompositeNode node, int loaded) {
+        if (node == childrenNode) {
+            childrenLoaded = loaded;
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
 }
@@ -2,21 +2,24 @@ package com.siberika.idea.pascal.debugger;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.ui.MessageType;
+import com.intellij.util.SmartList;
 import com.intellij.xdebugger.XDebuggerManager;
+import com.intellij.xdebugger.breakpoints.SuspendPolicy;
 import com.intellij.xdebugger.breakpoints.XBreakpointHandler;
 import com.intellij.xdebugger.breakpoints.XBreakpointManager;
 import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
 import com.siberika.idea.pascal.PascalBundle;
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiResults;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
 import com.siberika.idea.pascal.jps.util.FileUtil;
+import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,7 +32,6 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
     private final PascalXDebugProcess debugProcess;
     private final Map<PascalLineBreakpointProperties, Integer> breakIndexMap = new HashMap<PascalLineBreakpointProperties, Integer>();
     private final Set<PascalLineBreakpointProperties> registered = new HashSet<PascalLineBreakpointProperties>();
-    private final Queue<XLineBreakpoint<PascalLineBreakpointProperties>> queue = new ArrayDeque<XLineBreakpoint<PascalLineBreakpointProperties>>();
 
     public PascalLineBreakpointHandler(PascalXDebugProcess debugProcess) {
         super(PascalLineBreakpointType.class);
@@ -37,7 +39,7 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
     }
 
     @Override
-    public void registerBreakpoint(@NotNull XLineBreakpoint<PascalLineBreakpointProperties> breakpoint) {
+    public void registerBreakpoint(@NotNull final XLineBreakpoint<PascalLineBreakpointProperties> breakpoint) {
         PascalLineBreakpointProperties props = breakpoint.getProperties();
         int line = breakpoint.getLine()+1;
         String filename = breakpoint.getPresentableFilePath();
@@ -50,11 +52,103 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
         }
         PascalLineBreakpointProperties key = new PascalLineBreakpointProperties(filename, line);
         registered.add(key);
-        queue.add(breakpoint);
         if (!PascalXDebugProcess.getData(PascalXDebugProcess.retrieveSdk(debugProcess.environment)).getBoolean(PascalSdkData.Keys.DEBUGGER_BREAK_FULL_NAME)) {
             filename = FileUtil.getFilename(filename);
         }
-        debugProcess.sendCommand(String.format("-break-insert %s -f %s:%d", debugProcess.isInferiorRunning() ? "-h" : "", filename, line));
+        debugProcess.sendCommand(getInsertCommand(breakpoint, props, filename, line), new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                GdbMiResults bp = PascalXDebugProcess.isDone(res) ? res.getResults().getTuple("bkpt") : null;
+                if (bp != null) {
+                    handleBreakpointResult(breakpoint, bp);
+                } else {
+                    debugProcess.getSession().reportMessage(PascalBundle.message("debug.error.response",
+                            PascalXDebugProcess.getErrorMessage(res)), MessageType.ERROR);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns command inserting the breakpoint. Condition and ignore count are passed to debugger so it doesn't stop when they are not met.
+     * Breakpoints which don't suspend are inserted as dprintf with log message and log expression if the expression is a format string
+     * followed by arguments, e.g. "i = %d\n", i
+     */
+    private String getInsertCommand(XLineBreakpoint<PascalLineBreakpointProperties> breakpoint, PascalLineBreakpointProperties props, String filename, int line) {
+        StringBuilder options = new StringBuilder("-f");
+        String condition = breakpoint.getCondition();
+        if (StringUtils.isNotBlank(condition)) {
+            options.append(" -c ").append(quote(condition.trim()));
+        }
+        if ((props != null) && (props.getIgnoreCount() > 0)) {
+            options.append(" -i ").append(props.getIgnoreCount());
+        }
+        String location = String.format("%s:%d", filename, line);
+        if ((breakpoint.getSuspendPolicy() == SuspendPolicy.NONE) && debugProcess.getFeatures().has(DebuggerFeatures.Feature.DPRINTF)) {
+            StringBuilder format = new StringBuilder();
+            if (breakpoint.isLogMessage()) {
+                String message = PascalBundle.message("debug.breakpoint.reached", location);
+                format.append(message.replace("\\", "\\\\").replace("\"", "\\\"")).append("\\n");
+            }
+            List<String> args = new SmartList<String>();
+            String expression = breakpoint.getLogExpression() != null ? breakpoint.getLogExpression().trim() : "";
+            int formatEnd = getFormatEnd(expression);
+            if (formatEnd > 0) {
+                format.append(expression.substring(1, formatEnd));
+                args = splitArguments(expression.substring(formatEnd + 1));
+            }
+            if (format.length() > 0) {
+                StringBuilder command = new StringBuilder("-dprintf-insert ").append(options).append(' ').append(location)
+                        .append(" \"").append(format).append('"');
+                for (String arg : args) {
+                    command.append(' ').append(arg.contains(" ") ? quote(arg) : arg);
+                }
+                return command.toString();
+            }
+        }
+        return String.format("-break-insert %s%s %s", debugProcess.isInferiorRunning() ? "-h " : "", options, location);
+    }
+
+    // Returns index of closing quote of format string the expression starts with or -1
+    private static int getFormatEnd(String expression) {
+        if (!expression.startsWith("\"")) {
+            return -1;
+        }
+        for (int i = 1; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if ('\\' == c) {
+                i++;
+            } else if ('"' == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Splits comma separated arguments not enclosed in parentheses or brackets
+    private static List<String> splitArguments(String text) {
+        List<String> res = new SmartList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ',';
+            if (('(' == c) || ('[' == c)) {
+                depth++;
+            } else if ((')' == c) || (']' == c)) {
+                depth--;
+            } else if ((',' == c) && (depth <= 0)) {
+                String arg = text.substring(start, i).trim();
+                if (arg.length() > 0) {
+                    res.add(arg);
+                }
+                start = i + 1;
+            }
+        }
+        return res;
+    }
+
+    private static String quote(String str) {
+        return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
     }
 
     @Override
@@ -65,7 +159,6 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
             return;
         }
         registered.remove(props);
-        queue.poll();
         Integer ind = breakIndexMap.get(props);
         if (ind != null) {
             debugProcess.sendCommand(String.format("-break-delete %d", ind));
@@ -74,15 +167,14 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
         }
     }
 
-    public void handleBreakpointResult(GdbMiResults bp) {
+    private void handleBreakpointResult(final XLineBreakpoint<PascalLineBreakpointProperties> breakpoint, GdbMiResults bp) {
         String fname = bp.getString("fullname");
         final String fullname = fname != null ? fname.replace("//", "/") : null;
         final Integer line = bp.getInteger("line");
         if (fullname != null && line != null && (line.compareTo(0) > 0)) {
-            final XLineBreakpoint<PascalLineBreakpointProperties> lastRegistered = queue.poll();
             Integer requestedLine = getRequestedLine(bp);
             final PascalLineBreakpointProperties props = new PascalLineBreakpointProperties(fullname, line);
-            if (!line.equals(requestedLine) && lastRegistered != null) {
+            if (!line.equals(requestedLine)) {
                 final XBreakpointManager manager = XDebuggerManager.getInstance(debugProcess.environment.getProject()).getBreakpointManager();
                 ApplicationManager.getApplication().invokeLater(new Runnable() {
                     @Override
@@ -90,7 +182,7 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
                         ApplicationManager.getApplication().runWriteAction(new Runnable() {
                             @Override
                             public void run() {
-                                moveBreakpoint(manager, lastRegistered, fullname, line);
+                                moveBreakpoint(manager, breakpoint, fullname, line);
                             }
                         });
                     }
@@ -103,12 +195,17 @@ public class PascalLineBreakpointHandler extends XBreakpointHandler<XLineBreakpo
     private void moveBreakpoint(XBreakpointManager manager, XLineBreakpoint<PascalLineBreakpointProperties> breakpoint, String fullname, Integer line) {
         PascalLineBreakpointProperties oldProps = breakpoint.getProperties();
         final PascalLineBreakpointProperties props = new PascalLineBreakpointProperties(fullname, line);
+        props.setIgnoreCount(oldProps.getIgnoreCount());
         oldProps.setMoving(true);
         props.setMoving(true);
         try {
             manager.removeBreakpoint(breakpoint);
             if (!registered.contains(props)) {
-                manager.addLineBreakpoint(breakpoint.getType(), breakpoint.getFileUrl(), line - 1, props);
+                XLineBreakpoint<PascalLineBreakpointProperties> moved = manager.addLineBreakpoint(breakpoint.getType(), breakpoint.getFileUrl(), line - 1, props);
+                moved.setCondition(breakpoint.getCondition());
+                moved.setLogExpression(breakpoint.getLogExpression());
+                moved.setLogMessage(breakpoint.isLogMessage());
+                moved.setSuspendPolicy(breakpoint.getSuspendPolicy());
                 registered.add(props);
             }
         } finally {
@@ -11,6 +11,8 @@ public class PascalLineBreakpointProperties extends XBreakpointProperties<Pascal
     private String filename;
     private int line;
     private boolean moving;
+    // Number of hits debugger passes without stopping
+    private int ignoreCount;
 
     public PascalLineBreakpointProperties() {
     }
@@ -29,6 +31,7 @@ public class PascalLineBreakpointProperties extends XBreakpointProperties<Pascal
 
     @Override
     public void loadState(PascalLineBreakpointProperties state) {
+        ignoreCount = state.ignoreCount;
     }
 
     public String getFilename() {
@@ -39,6 +42,14 @@ public class PascalLineBreakpointProperties extends XBreakpointProperties<Pascal
         return line;
     }
 
+    public int getIgnoreCount() {
+        return ignoreCount;
+    }
+
+    public void setIgnoreCount(int ignoreCount) {
+        this.ignoreCount = ignoreCount;
+    }
+
     public boolean isMoving() {
         return moving;
     }
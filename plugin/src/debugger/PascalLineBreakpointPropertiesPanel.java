@@ -0,0 +1,46 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
+import com.intellij.xdebugger.breakpoints.ui.XBreakpointCustomPropertiesPanel;
+import com.siberika.idea.pascal.PascalBundle;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Line breakpoint properties handled by debugger
+ */
+public class PascalLineBreakpointPropertiesPanel extends XBreakpointCustomPropertiesPanel<XLineBreakpoint<PascalLineBreakpointProperties>> {
+
+    private final JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+    private final JSpinner ignoreCount = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 1));
+
+    public PascalLineBreakpointPropertiesPanel() {
+        JLabel label = new JLabel(PascalBundle.message("debug.breakpoint.ignoreCount"));
+        label.setLabelFor(ignoreCount);
+        panel.add(label);
+        panel.add(Box.createHorizontalStrut(5));
+        panel.add(ignoreCount);
+    }
+
+    @NotNull
+    @Override
+    public JComponent getComponent() {
+        return panel;
+    }
+
+    @Override
+    public void saveTo(@NotNull XLineBreakpoint<PascalLineBreakpointProperties> breakpoint) {
+        PascalLineBreakpointProperties props = breakpoint.getProperties();
+        if (props != null) {
+            props.setIgnoreCount((Integer) ignoreCount.getValue());
+        }
+    }
+
+    @Override
+    public void loadFrom(@NotNull XLineBreakpoint<PascalLineBreakpointProperties> breakpoint) {
+        PascalLineBreakpointProperties props = breakpoint.getProperties();
+        ignoreCount.setValue(props != null ? props.getIgnoreCount() : 0);
+    }
+}
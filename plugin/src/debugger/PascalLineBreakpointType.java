@@ -2,7 +2,9 @@ package com.siberika.idea.pascal.debugger;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.xdebugger.breakpoints.XLineBreakpoint;
 import com.intellij.xdebugger.breakpoints.XLineBreakpointType;
+import com.intellij.xdebugger.breakpoints.ui.XBreakpointCustomPropertiesPanel;
 import com.siberika.idea.pascal.PascalFileType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -30,4 +32,10 @@ public class PascalLineBreakpointType extends XLineBreakpointType<PascalLineBrea
     public PascalLineBreakpointProperties createBreakpointProperties(@NotNull VirtualFile file, int line) {
         return new PascalLineBreakpointProperties(file.getCanonicalPath(), line+1);
     }
+
+    @Nullable
+    @Override
+    public XBreakpointCustomPropertiesPanel<XLineBreakpoint<PascalLineBreakpointProperties>> createCustomPropertiesPanel() {
+        return new PascalLineBreakpointPropertiesPanel();
+    }
 }
@@ -23,7 +23,11 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.ui.MessageType;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.testFramework.LightVirtualFile;
@@ -37,14 +41,17 @@ import com.intellij.xdebugger.evaluation.EvaluationMode;
 import com.intellij.xdebugger.evaluation.XDebuggerEditorsProvider;
 import com.intellij.xdebugger.evaluation.XDebuggerEvaluator;
 import com.intellij.xdebugger.frame.XCompositeNode;
+import com.intellij.xdebugger.frame.XExecutionStack;
 import com.intellij.xdebugger.frame.XStackFrame;
 import com.intellij.xdebugger.frame.XSuspendContext;
 import com.intellij.xdebugger.frame.XValueChildrenList;
 import com.intellij.xdebugger.ui.XDebugTabLayouter;
 import com.siberika.idea.pascal.PascalBundle;
 import com.siberika.idea.pascal.PascalFileType;
+import com.siberika.idea.pascal.debugger.gdb.GdbExecutionStack;
 import com.siberika.idea.pascal.debugger.gdb.GdbStackFrame;
 import com.siberika.idea.pascal.debugger.gdb.GdbVariableObject;
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiResults;
 import com.siberika.idea.pascal.editor.ContextAwareVirtualFile;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
@@ -58,8 +65,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class PascalXDebugProcess extends XDebugProcess {
 
@@ -86,12 +102,24 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
     private static final String VAR_PREFIX_WATCHES = "w%";
     private final XBreakpointHandler<?>[] MY_BREAKPOINT_HANDLERS = new XBreakpointHandler[] {new PascalLineBreakpointHandler(this)};
 
-    private XCompositeNode lastQueriedVariablesCompositeNode;
-    private XCompositeNode lastParentNode;
+    // Callbacks waiting for result records by command token
+    private final ConcurrentMap<Long, CommandCallback> pendingRequests = new ConcurrentHashMap<Long, CommandCallback>();
+    private final AtomicLong tokenCounter = new AtomicLong(1);
     private boolean inferiorRunning = false;
+    // Variable objects were updated since last stop
+    private volatile boolean varObjectsUpdated = false;
+    // Only stopped thread is suspended while other threads keep running
+    private volatile boolean nonStop = false;
+    private final DebuggerFeatures features = new DebuggerFeatures(getDefaultFeatures());
+    // Source files by full names reported by debugger including not found ones
+    private final Map<String, VirtualFile> sourceFiles = new HashMap<String, VirtualFile>();
+    private final FrameResolveCache resolveCache = new FrameResolveCache();
+    private final DebuggerMetrics metrics = new DebuggerMetrics();
 
     protected abstract String getVarFrame();
     protected abstract String getVarNameQuoteChar();
+    // Features supported by the backend unless detected otherwise
+    protected abstract Collection<DebuggerFeatures.Feature> getDefaultFeatures();
 
     protected abstract void init();
 
@@ -157,57 +185,141 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
         }
     }
 
+    /**
+     * Switches debugger to non-stop mode if it's enabled in SDK settings. Should be called before the program is started.
+     * In this mode a breakpoint stops only the thread which hit it and execution commands apply to the thread of the suspend context.
+     */
+    protected void enableNonStop() {
+        if (!getData().getBoolean(PascalSdkData.Keys.DEBUGGER_NON_STOP) || !features.has(DebuggerFeatures.Feature.NON_STOP)) {
+            return;
+        }
+        sendCommand("-gdb-set non-stop on", new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                if (isDone(res)) {
+                    nonStop = true;
+                } else {
+                    features.disableIfUnsupported(DebuggerFeatures.Feature.NON_STOP, res);
+                    getSession().reportMessage(PascalBundle.message("debug.error.response", getErrorMessage(res)), MessageType.WARNING);
+                }
+            }
+        });
+    }
+
+    public boolean isNonStop() {
+        return nonStop;
+    }
+
     @Override
     public void startPausing() {
-        sendCommand("-exec-interrupt");
+        sendCommand(nonStop ? "-exec-interrupt --all" : "-exec-interrupt");
     }
 
     @Override
     public void resume(@Nullable XSuspendContext context) {
-        sendCommand("-exec-continue --all");
+        if (nonStop) {
+            sendCommand("-exec-continue" + getThreadOption(context));
+        } else {
+            sendCommand(features.has(DebuggerFeatures.Feature.CONTINUE_ALL_THREADS) ? "-exec-continue --all" : "-exec-continue");
+        }
     }
 
     @Override
     public void startStepOver(@Nullable XSuspendContext context) {
-        sendCommand("-exec-next");
+        sendCommand("-exec-next" + getThreadOption(context));
     }
 
     @Override
     public void startStepInto(@Nullable XSuspendContext context) {
-        sendCommand("-exec-step");
+        sendCommand("-exec-step" + getThreadOption(context));
     }
 
     @Override
     public void startStepOut(@Nullable XSuspendContext context) {
-        sendCommand("-exec-finish");
+        sendCommand("-exec-finish" + getThreadOption(context));
+    }
+
+    // Limits execution command to the thread of the suspend context in non-stop mode
+    // Thread of the frame selected in the frames view takes precedence over the thread which caused the stop
+    private String getThreadOption(@Nullable XSuspendContext context) {
+        if (!nonStop) {
+            return "";
+        }
+        XStackFrame frame = getSession().getCurrentStackFrame();
+        XExecutionStack stack = frame instanceof GdbStackFrame ? ((GdbStackFrame) frame).getExecutionStack()
+                : (context != null ? context.getActiveExecutionStack() : null);
+        return stack instanceof GdbExecutionStack ? " --thread " + ((GdbExecutionStack) stack).getThreadId() : "";
+    }
+
+    // In non-stop mode debugger's selected thread changes when any thread stops so commands should specify the frame explicitly
+    private String getFrameOptions(String threadId, int level) {
+        return nonStop ? String.format(" --thread %s --frame %d", threadId, level) : "";
     }
 
     @Override
     public void stop() {
-        // finalize something
+        pendingRequests.clear();
+        resolveCache.clear();
     }
 
     @Override
     public void runToPosition(@NotNull XSourcePosition position, @Nullable XSuspendContext context) {
-        sendCommand(String.format("-exec-until %s:%d", position.getFile().getCanonicalPath(), position.getLine()));
+        sendCommand(String.format("-exec-until%s %s:%d", getThreadOption(context), position.getFile().getCanonicalPath(), position.getLine()));
     }
 
     public void sendCommand(String command) {
+        sendCommand(command, null);
+    }
+
+    /**
+     * Sends command tagged with a unique token without waiting for its result.
+     * Commands can be sent while results of previous ones are not received yet.
+     * @param callback  called with result record of the command
+     */
+    public void sendCommand(String command, @Nullable CommandCallback callback) {
         if (getSession().isStopped()) {
             return;
         }
+        Long token = tokenCounter.getAndIncrement();
+        if (callback != null) {
+            pendingRequests.put(token, callback);
+        }
+        metrics.commandSent(token, command);
         try {
             OutputStream commandStream = getProcessHandler().getProcessInput();
             if (commandStream != null) {
-                commandStream.write((command + "\n").getBytes("UTF-8"));
-                commandStream.flush();
-                printToConsole(">>>> " + command + "\n", ConsoleViewContentType.NORMAL_OUTPUT);
+                synchronized (commandStream) {
+                    commandStream.write((token + command + "\n").getBytes("UTF-8"));
+                    commandStream.flush();
+                }
+                printToConsole(">>>> " + token + command + "\n", ConsoleViewContentType.NORMAL_OUTPUT);
+            } else {
+                pendingRequests.remove(token);
+                metrics.commandFailed(token);
             }
         } catch (IOException e) {
+            pendingRequests.remove(token);
+            metrics.commandFailed(token);
             LOG.warn("ERROR: sending command to GDB", e);
         }
     }
 
+    /**
+     * Passes result record to the callback registered for its token
+     * @param receivedAt  System.nanoTime() when the record was received
+     * @param parseTime   time spent parsing the record in nanoseconds
+     * @return true if there was a callback for the record
+     */
+    public boolean handleResponse(GdbMiLine res, long receivedAt, long parseTime) {
+        CommandCallback callback = res.getToken() != null ? pendingRequests.remove(res.getToken()) : null;
+        long start = System.nanoTime();
+        if (callback != null) {
+            callback.on(res);
+        }
+        metrics.resultReceived(res, receivedAt, parseTime, System.nanoTime() - start);
+        return callback != null;
+    }
+
     @NotNull
     @Override
     public XDebuggerEditorsProvider getEditorsProvider() {
@@ -242,6 +354,14 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
         return new XDebugTabLayouter() {
             @Override
             public void registerAdditionalContent(@NotNull RunnerLayoutUi ui) {
+                ProtocolMetricsPanel metricsPanel = new ProtocolMetricsPanel(environment.getProject(), metrics);
+                Content metricsContent = ui.createContent("PascalDebugMetricsContent", metricsPanel,
+                        PascalBundle.message("debug.metrics.title"), AllIcons.Debugger.Console, null);
+                metricsContent.setCloseable(false);
+                metricsContent.setActions(new DefaultActionGroup(metricsPanel.createActions()), ActionPlaces.DEBUGGER_TOOLBAR, metricsPanel);
+                Disposer.register(metricsContent, metricsPanel);
+                ui.addContent(metricsContent, 3, PlaceInGrid.bottom, true);
+
                 if (!isOutputConsoleNeeded()) {
                     return;
                 }
@@ -271,24 +391,60 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
         return (PascalLineBreakpointHandler) MY_BREAKPOINT_HANDLERS[0];
     }
 
-    public void setLastQueriedVariablesCompositeNode(XCompositeNode lastQueriedVariablesCompositeNode) {
-        this.lastQueriedVariablesCompositeNode = lastQueriedVariablesCompositeNode;
-    }
-
-    public void evaluate(String expression, XDebuggerEvaluator.XEvaluationCallback callback) {
-        String key = VAR_PREFIX_WATCHES + expression.replace(' ', '_');
+    public void evaluate(String threadId, int level, String expression, final XDebuggerEvaluator.XEvaluationCallback callback) {
+        final String key = VAR_PREFIX_WATCHES + expression.replace(' ', '_');
+        String frameOptions = getFrameOptions(threadId, level);
         GdbVariableObject var = variableObjectMap.get(key);
         if (null == var) {
             variableObjectMap.put(key, new GdbVariableObject(key, expression, callback));
-            sendCommand(String.format("-var-create %4$s%s%4$s %s \"%s\"", key, VAR_FRAME, expression, VAR_NAME_QUOTE_CHAR));
+            sendCommand(String.format("-var-create%s %5$s%s%5$s %s \"%s\"", frameOptions, key, VAR_FRAME, expression, VAR_NAME_QUOTE_CHAR), new CommandCallback() {
+                @Override
+                public void on(GdbMiLine res) {
+                    if (isDone(res)) {
+                        handleVarResult(res.getResults());
+                    } else {
+                        variableObjectMap.remove(key);
+                        callback.errorOccurred(getErrorMessage(res));
+                    }
+                }
+            });
         } else {
             var.setCallback(callback);
             updateVariableObjectUI(var);
-            sendCommand(String.format("-var-update --all-values %2$s%s%2$s", key, VAR_NAME_QUOTE_CHAR));
+            sendVarUpdate(frameOptions, key);
         }
     }
 
-    public void handleVarResult(GdbMiResults res) {
+    private void sendVarUpdate(String frameOptions, String key) {
+        sendCommand(String.format("-var-update%s --all-values %3$s%s%3$s", frameOptions, key, VAR_NAME_QUOTE_CHAR), new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                if (isDone(res)) {
+                    handleVarUpdate(res.getResults());
+                } else {
+                    reportError(res);
+                }
+            }
+        });
+    }
+
+    public static boolean isDone(GdbMiLine res) {
+        return "done".equals(res.getRecClass());
+    }
+
+    /**
+     * Shows error message of the result record in the debugger session
+     */
+    public void reportError(GdbMiLine res) {
+        getSession().reportMessage(PascalBundle.message("debug.error.response", getErrorMessage(res)), MessageType.ERROR);
+    }
+
+    public static String getErrorMessage(GdbMiLine res) {
+        String msg = res.getResults().getString("msg");
+        return msg != null ? msg.replace("\\n", "\n") : PascalBundle.message("debug.error.response", res.getRecClass());
+    }
+
+    private void handleVarResult(GdbMiResults res) {
         String key = res.getString("name");
         GdbVariableObject var = variableObjectMap.get(key);
         if (var != null) {
@@ -303,32 +459,168 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
         var.getCallback().evaluated(new PascalDebuggerValue(this, var.getKey(), var.getType(), var.getValue(), var.getChildrenCount()));
     }
 
-    public void handleVarUpdate(GdbMiResults results) {
+    private void handleVarUpdate(GdbMiResults results) {
+        for (GdbVariableObject var : handleVarChanges(results)) {
+            if (var.getCallback() != null) {
+                updateVariableObjectUI(var);
+            }
+        }
+    }
+
+    // Applies changelist of -var-update result to variable objects and returns the changed ones
+    private List<GdbVariableObject> handleVarChanges(GdbMiResults results) {
         List<Object> changes = results.getList("changelist");
+        if (null == changes) {
+            return Collections.emptyList();
+        }
+        List<GdbVariableObject> res = new ArrayList<GdbVariableObject>(changes.size());
         for (Object o : changes) {
             GdbMiResults change = (GdbMiResults) o;
-            handleVarResult(change);
+            GdbVariableObject var = variableObjectMap.get(change.getString("name"));
+            if ((var != null) && !"false".equals(change.getString("in_scope"))) {
+                var.updateFromChange(change);
+                res.add(var);
+            }
         }
+        return res;
+    }
+
+    /**
+     * Requests children of the variable object starting from the given index.
+     * The value is notified of the number of children loaded into the node only when GDB returns them successfully.
+     * @param from           index of first child to retrieve
+     * @param childrenCount  total number of children if known
+     */
+    public void computeValueChildren(@NotNull final PascalDebuggerValue value, final XCompositeNode node, final int from, @Nullable final Integer childrenCount) {
+        final String name = value.getName();
+        final int to;
+        String command = "-var-list-children --all-values " + name;
+        final boolean paged = (childrenCount != null) && (childrenCount > XCompositeNode.MAX_CHILDREN_TO_SHOW)
+                && features.has(DebuggerFeatures.Feature.VAR_LIST_CHILDREN_RANGE);
+        if (paged) {
+            to = Math.min(from + XCompositeNode.MAX_CHILDREN_TO_SHOW, childrenCount);
+            command = command + " " + from + " " + to;
+        } else {
+            to = childrenCount != null ? childrenCount : 0;
+        }
+        final int remaining = childrenCount != null ? childrenCount - to : 0;
+        sendCommand(command, new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                if (isDone(res)) {
+                    List<Object> children = res.getResults().getList("children");
+                    value.onChildrenLoaded(node, to);
+                    handleVariables(node, children != null ? children : Collections.emptyList(), true, remaining);
+                } else if (paged && (0 == from) && features.disableIfUnsupported(DebuggerFeatures.Feature.VAR_LIST_CHILDREN_RANGE, res)) {
+                    computeValueChildren(value, node, from, childrenCount);
+                } else {
+                    node.setErrorMessage(getErrorMessage(res));
+                }
+            }
+        });
     }
 
-    synchronized public void computeValueChildren(String name, XCompositeNode node) {
-        lastParentNode = node;
-        sendCommand("-var-list-children --all-values " + name);
-    }
-
-    synchronized public void handleVariablesResponse(List<Object> variables) {
-        handleVariables(lastQueriedVariablesCompositeNode, variables, false);
+    public void computeFrameVariables(String threadId, int level, final XCompositeNode node) {
+        final String frameOptions = getFrameOptions(threadId, level);
+        sendCommand(String.format("-stack-list-variables --thread %s --frame %d --simple-values", threadId, level), new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                List<Object> variables = isDone(res) ? res.getResults().getList("variables") : null;
+                if (variables != null) {
+                    refreshVariableObjects(frameOptions, node, variables);
+                } else {
+                    node.setErrorMessage(getErrorMessage(res));
+                }
+            }
+        });
+    }
+
+    /**
+     * Brings variable objects of the frame variables up to date and fills the node when all results are received.
+     * Existing variable objects are updated with a single -var-update per stop and missing ones are created in one burst of commands,
+     * so cost of a step doesn't depend much on number of variables.
+     */
+    private void refreshVariableObjects(final String frameOptions, final XCompositeNode node, final List<Object> variables) {
+        final Map<String, String> missing = new LinkedHashMap<String, String>();
+        final List<String> existing = new ArrayList<String>();
+        for (Object o : variables) {
+            if (o instanceof GdbMiResults) {
+                String varName = ((GdbMiResults) o).getString("name");
+                String varKey = VAR_PREFIX_LOCAL + varName.replace(' ', '_');
+                if (variableObjectMap.containsKey(varKey)) {
+                    existing.add(varKey);
+                } else {
+                    missing.put(varKey, varName);
+                }
+            }
+        }
+        boolean update = !varObjectsUpdated && !existing.isEmpty();
+        // One extra count is released after all commands are sent
+        final AtomicInteger pending = new AtomicInteger(missing.size() + (update ? 1 : 0) + 1);
+        final Runnable completion = new Runnable() {
+            @Override
+            public void run() {
+                if (pending.decrementAndGet() == 0) {
+                    handleVariables(node, variables, false, 0);
+                }
+            }
+        };
+        if (update) {
+            varObjectsUpdated = true;
+            if (features.has(DebuggerFeatures.Feature.VAR_UPDATE_ALL)) {
+                sendCommand("-var-update" + frameOptions + " --all-values *", new CommandCallback() {
+                    @Override
+                    public void on(GdbMiLine res) {
+                        if (isDone(res)) {
+                            handleVarChanges(res.getResults());
+                        } else if (features.disableIfUnsupported(DebuggerFeatures.Feature.VAR_UPDATE_ALL, res)) {
+                            sendVarUpdates(frameOptions, existing, pending, completion);
+                        } else {
+                            reportError(res);
+                        }
+                        completion.run();
+                    }
+                });
+            } else {
+                sendVarUpdates(frameOptions, existing, pending, completion);
+                completion.run();
+            }
+        }
+        for (final Map.Entry<String, String> entry : missing.entrySet()) {
+            sendCommand(String.format("-var-create%s %5$s%s%5$s %s \"%s\"", frameOptions, entry.getKey(), VAR_FRAME, entry.getValue(), VAR_NAME_QUOTE_CHAR), new CommandCallback() {
+                @Override
+                public void on(GdbMiLine res) {
+                    if (isDone(res)) {
+                        variableObjectMap.put(entry.getKey(), new GdbVariableObject(entry.getKey(), entry.getValue(), null, res.getResults()));
+                    } else {
+                        reportError(res);
+                    }
+                    completion.run();
+                }
+            });
+        }
+        completion.run();
     }
 
-    synchronized public void handleChildrenResult(List<Object> variables) {
-        handleVariables(lastParentNode, variables, true);
-        lastParentNode = null;
+    // Fallback for debuggers which can't update all variable objects at once
+    private void sendVarUpdates(String frameOptions, List<String> keys, AtomicInteger pending, final Runnable completion) {
+        pending.addAndGet(keys.size());
+        for (String key : keys) {
+            sendCommand(String.format("-var-update%s --all-values %3$s%s%3$s", frameOptions, key, VAR_NAME_QUOTE_CHAR), new CommandCallback() {
+                @Override
+                public void on(GdbMiLine res) {
+                    if (isDone(res)) {
+                        handleVarChanges(res.getResults());
+                    } else {
+                        reportError(res);
+                    }
+                    completion.run();
+                }
+            });
+        }
     }
 
-    private void handleVariables(XCompositeNode node, List<Object> variables, boolean children) {
-        if (null == node) {
-            return;
-        }
+    private void handleVariables(XCompositeNode node, List<Object> variables, boolean children, int remaining) {
         if (variables.isEmpty()) {
             node.addChildren(XValueChildrenList.EMPTY, true);
         } else {
@@ -355,17 +647,11 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
                         }
                     }
                     GdbVariableObject var = variableObjectMap.get(varKey);
-                    if (null != var) {
-                        var.updateFromResult(res);
-                        if (!children) {
-                            sendCommand(String.format("-var-update --all-values %2$s%s%2$s", varKey, VAR_NAME_QUOTE_CHAR));
-                        }
-                    } else {
+                    if (null == var) {
                         var = new GdbVariableObject(varKey, varNameResolved, null, res);
                         variableObjectMap.put(varKey, var);
-                        if (!children) {
-                            sendCommand(String.format("-var-create %4$s%s%4$s %s \"%s\"", varKey, VAR_FRAME, varName, VAR_NAME_QUOTE_CHAR));
-                        }
+                    } else if (children) {
+                        var.updateFromResult(res);
                     }
 
                     childrenList.add(varNameResolved.substring(varNameResolved.lastIndexOf('.')+1),
@@ -375,7 +661,10 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
                     return;
                 }
             }
-            node.addChildren(childrenList, true);
+            node.addChildren(childrenList, remaining <= 0);
+            if (remaining > 0) {
+                node.tooManyChildren(remaining);
+            }
         }
     }
 
@@ -389,6 +678,38 @@ public abstract class PascalXDebugProcess extends XDebugProcess {
 
     public void setInferiorRunning(boolean inferiorRunning) {
         this.inferiorRunning = inferiorRunning;
+        if (inferiorRunning) {
+            varObjectsUpdated = false;
+        }
+    }
+
+    /**
+     * Returns source file by its full name reported by debugger. Results are cached for the debug session.
+     */
+    @Nullable
+    public VirtualFile findSourceFile(@NotNull String fullname) {
+        synchronized (sourceFiles) {
+            if (sourceFiles.containsKey(fullname)) {
+                return sourceFiles.get(fullname);
+            }
+        }
+        VirtualFile file = LocalFileSystem.getInstance().findFileByPath(fullname.replace(File.separatorChar, '/'));
+        synchronized (sourceFiles) {
+            sourceFiles.put(fullname, file);
+        }
+        return file;
+    }
+
+    public DebuggerFeatures getFeatures() {
+        return features;
+    }
+
+    public DebuggerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public FrameResolveCache getResolveCache() {
+        return resolveCache;
     }
 
     public PascalSdkData getData() {
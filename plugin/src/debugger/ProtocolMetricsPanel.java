@@ -0,0 +1,116 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
+import com.intellij.ui.ScrollPaneFactory;
+import com.intellij.ui.table.JBTable;
+import com.siberika.idea.pascal.PascalBundle;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Debugger tab with percentiles of debugger protocol timings. Updated periodically while the debug session is active.
+ */
+public class ProtocolMetricsPanel extends JPanel implements Disposable {
+
+    private static final int REFRESH_INTERVAL_MS = 1000;
+
+    private final Project project;
+    private final DebuggerMetrics metrics;
+    private final DefaultTableModel model;
+    private final Timer timer;
+
+    public ProtocolMetricsPanel(Project project, DebuggerMetrics metrics) {
+        super(new BorderLayout());
+        this.project = project;
+        this.metrics = metrics;
+        String[] statColumns = DebuggerMetrics.getStatColumns();
+        String[] columns = new String[statColumns.length + 2];
+        columns[0] = PascalBundle.message("debug.metrics.command");
+        columns[1] = PascalBundle.message("debug.metrics.count");
+        System.arraycopy(statColumns, 0, columns, 2, statColumns.length);
+        model = new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        add(ScrollPaneFactory.createScrollPane(new JBTable(model)), BorderLayout.CENTER);
+        timer = new Timer(REFRESH_INTERVAL_MS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refresh();
+            }
+        });
+        timer.start();
+    }
+
+    private void refresh() {
+        model.setRowCount(0);
+        for (DebuggerMetrics.Stat stat : metrics.getStats()) {
+            Object[] row = new Object[stat.values.length + 2];
+            row[0] = stat.name;
+            row[1] = stat.count;
+            for (int i = 0; i < stat.values.length; i++) {
+                row[i + 2] = stat.values[i];
+            }
+            model.addRow(row);
+        }
+    }
+
+    public AnAction[] createActions() {
+        return new AnAction[] {
+                new AnAction(PascalBundle.message("debug.metrics.refresh"), null, AllIcons.Actions.Refresh) {
+                    @Override
+                    public void actionPerformed(AnActionEvent e) {
+                        refresh();
+                    }
+                },
+                new AnAction(PascalBundle.message("debug.metrics.export"), null, AllIcons.Actions.Export) {
+                    @Override
+                    public void actionPerformed(AnActionEvent e) {
+                        exportTrace();
+                    }
+                }
+        };
+    }
+
+    private void exportTrace() {
+        FileSaverDescriptor descriptor = new FileSaverDescriptor(PascalBundle.message("debug.metrics.export"),
+                PascalBundle.message("debug.metrics.export.description"), "csv");
+        VirtualFileWrapper target = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project).save(null, "debugger-trace.csv");
+        if (null == target) {
+            return;
+        }
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(target.getFile()), "UTF-8");
+            try {
+                metrics.exportTrace(writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Messages.showErrorDialog(project, PascalBundle.message("debug.metrics.export.error", e.getMessage()), PascalBundle.message("debug.metrics.export"));
+        }
+    }
+
+    @Override
+    public void dispose() {
+        timer.stop();
+    }
+}
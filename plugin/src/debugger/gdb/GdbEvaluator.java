@@ -18,6 +18,7 @@ public class GdbEvaluator extends XDebuggerEvaluator {
 
     @Override
     public void evaluate(@NotNull String expression, @NotNull XEvaluationCallback callback, @Nullable XSourcePosition expressionPosition) {
-        gdbStackFrame.getExecutionStack().getProcess().evaluate(expression, callback);
+        GdbExecutionStack stack = gdbStackFrame.getExecutionStack();
+        stack.getProcess().evaluate(stack.getThreadId(), gdbStackFrame.getLevel(), expression, callback);
     }
 }
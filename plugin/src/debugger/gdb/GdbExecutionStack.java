@@ -2,41 +2,95 @@ package com.siberika.idea.pascal.debugger.gdb;
 
 import com.intellij.xdebugger.frame.XExecutionStack;
 import com.intellij.xdebugger.frame.XStackFrame;
+import com.siberika.idea.pascal.PascalBundle;
+import com.siberika.idea.pascal.debugger.CommandCallback;
+import com.siberika.idea.pascal.debugger.DebuggerFeatures;
 import com.siberika.idea.pascal.debugger.PascalXDebugProcess;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiResults;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Author: George Bakhtadze
  * Date: 31/03/2017
  */
 public class GdbExecutionStack extends XExecutionStack {
 
+    // Number of frames retrieved at once. Next frames are requested by the frames view when needed.
+    private static final int FRAMES_PAGE_SIZE = 100;
+    // GDB error when the requested range starts past the last frame, e.g. when the number of frames is a multiple of page size
+    private static final String ERROR_NOT_ENOUGH_FRAMES = "Not enough frames in stack";
+
     private final GdbSuspendContext context;
     private final PascalXDebugProcess process;
-    private final GdbMiLine response;
     private final String threadId;
+    private final GdbMiResults frame;
 
-    public GdbExecutionStack(GdbSuspendContext context, GdbMiLine response) {
-        super("Thread: " + response.getResults().getString("thread-id"));
+    /**
+     * @param frame  top frame of the thread or null if the thread is running
+     */
+    public GdbExecutionStack(GdbSuspendContext context, String threadId, @Nullable GdbMiResults frame) {
+        super(PascalBundle.message(frame != null ? "debug.thread" : "debug.thread.running", threadId));
         this.context = context;
         this.process = context.getProcess();
-        this.response = response;
-        this.threadId = response.getResults().getString("thread-id");
+        this.threadId = threadId;
+        this.frame = frame;
     }
 
     @Nullable
     @Override
     public XStackFrame getTopFrame() {
-        GdbMiResults frame = response.getResults().getTuple("frame");
-        return new GdbStackFrame(this, frame);
+        return frame != null ? new GdbStackFrame(this, frame) : null;
     }
 
     @Override
-    public void computeStackFrames(int firstFrameIndex, XStackFrameContainer container) {
-        this.context.setStackFrameContainer(container);
-        context.getProcess().sendCommand("-stack-list-frames");
+    public void computeStackFrames(final int firstFrameIndex, final XStackFrameContainer container) {
+        if (null == frame) {
+            container.addStackFrames(Collections.<XStackFrame>emptyList(), true);
+            return;
+        }
+        final boolean paged = process.getFeatures().has(DebuggerFeatures.Feature.STACK_FRAMES_RANGE);
+        String command = "-stack-list-frames --thread " + threadId;
+        if (paged) {
+            command = String.format("%s %d %d", command, firstFrameIndex, firstFrameIndex + FRAMES_PAGE_SIZE - 1);
+        }
+        process.sendCommand(command, new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                List<Object> stack = PascalXDebugProcess.isDone(res) ? res.getResults().getList("stack") : null;
+                if (stack != null) {
+                    addStackFramesToContainer(paged ? stack : stack.subList(Math.min(firstFrameIndex, stack.size()), stack.size()),
+                            container, !paged || (stack.size() < FRAMES_PAGE_SIZE));
+                } else if (paged && (firstFrameIndex > 0) && isNotEnoughFrames(res)) {
+                    container.addStackFrames(Collections.<XStackFrame>emptyList(), true);
+                } else if (paged && process.getFeatures().disableIfUnsupported(DebuggerFeatures.Feature.STACK_FRAMES_RANGE, res)) {
+                    computeStackFrames(firstFrameIndex, container);
+                } else {
+                    container.errorOccurred(PascalXDebugProcess.getErrorMessage(res));
+                }
+            }
+        });
+    }
+
+    private static boolean isNotEnoughFrames(GdbMiLine res) {
+        return "error".equals(res.getRecClass()) && PascalXDebugProcess.getErrorMessage(res).contains(ERROR_NOT_ENOUGH_FRAMES);
+    }
+
+    private void addStackFramesToContainer(List<Object> stack, XStackFrameContainer container, boolean last) {
+        List<XStackFrame> frames = new ArrayList<XStackFrame>(stack.size());
+        for (Object o : stack) {
+            if (o instanceof GdbMiResults) {
+                frames.add(new GdbStackFrame(this, ((GdbMiResults) o).getTuple("frame")));
+            } else {
+                container.errorOccurred("Invalid stack frames list entry");
+                return;
+            }
+        }
+        container.addStackFrames(frames, last);
     }
 
     public PascalXDebugProcess getProcess() {
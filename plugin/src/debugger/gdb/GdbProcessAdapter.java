@@ -1,26 +1,18 @@
 package com.siberika.idea.pascal.debugger.gdb;
 
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.ui.MessageType;
-import com.intellij.xdebugger.frame.XStackFrame;
 import com.siberika.idea.pascal.PascalBundle;
 import com.siberika.idea.pascal.debugger.PascalXDebugProcess;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiParser;
-import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiResults;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbStopReason;
 import com.siberika.idea.pascal.jps.util.PascalConsoleProcessAdapter;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
 /**
  * Author: George Bakhtadze
  * Date: 28/03/2017
  */
 public class GdbProcessAdapter extends PascalConsoleProcessAdapter {
-    private static final Logger LOG = Logger.getInstance(GdbProcessAdapter.class);
     private final PascalXDebugProcess process;
     private GdbSuspendContext suspendContext;
 
@@ -30,31 +22,19 @@ public class GdbProcessAdapter extends PascalConsoleProcessAdapter {
 
     @Override
     public boolean onLine(String text) {
+        long start = System.nanoTime();
         GdbMiLine res = GdbMiParser.parseLine(text);
+        long parseTime = System.nanoTime() - start;
+        process.getMetrics().lineParsed(parseTime);
         if (GdbMiLine.Type.EXEC_ASYNC.equals(res.getType())) {
             if ("stopped".equals(res.getRecClass())) {
                 handleStop(res);
             } else if ("running".equals(res.getRecClass())) {
-                process.setInferiorRunning(true);
+                handleRunning(res);
             }
         } else if (GdbMiLine.Type.RESULT_RECORD.equals(res.getType())) {
-            if ("done".equals(res.getRecClass())) {
-                if (res.getResults().getValue("stack") != null) {
-                    addStackFramesToContainer(res.getResults().getList("stack"));
-                } else if (res.getResults().getValue("bkpt") != null) {
-                    process.getBreakpointHandler().handleBreakpointResult(res.getResults().getTuple("bkpt"));
-                } else if (res.getResults().getValue("variables") != null) {
-                    process.handleVariablesResponse(res.getResults().getList("variables"));
-                } else if (isCreateVarResult(res.getResults())) {
-                    process.handleVarResult(res.getResults());
-                } else if (res.getResults().getValue("changelist") != null) {
-                    process.handleVarUpdate(res.getResults());
-                } else if (res.getResults().getValue("children") != null) {
-                    process.handleChildrenResult(res.getResults().getList("children"));
-                } else if ("0".equals(res.getResults().getString("numchild"))) {
-                    process.handleChildrenResult(Collections.emptyList());
-                }
-            } else if ("error".equals(res.getRecClass())) {
+            // Errors of commands with callbacks are handled by the callbacks
+            if (!process.handleResponse(res, start, parseTime) && "error".equals(res.getRecClass())) {
                 String msg = res.getResults().getString("msg");
                 if (msg != null) {
                     process.getSession().reportMessage(PascalBundle.message("debug.error.response",
@@ -65,8 +45,13 @@ public class GdbProcessAdapter extends PascalConsoleProcessAdapter {
         return true;
     }
 
-    private boolean isCreateVarResult(GdbMiResults results) {
-        return (results.getValue("name") != null) && (results.getValue("value") != null);
+    // In non-stop mode threads other than the suspended one are resumed independently
+    private void handleRunning(GdbMiLine res) {
+        String threadId = res.getResults().getString("thread-id");
+        if (!process.isNonStop() || (null == suspendContext) || "all".equals(threadId)
+                || ((threadId != null) && threadId.equals(suspendContext.getThreadId()))) {
+            process.setInferiorRunning(true);
+        }
     }
 
     private void handleStop(GdbMiLine res) {
@@ -103,22 +88,4 @@ public class GdbProcessAdapter extends PascalConsoleProcessAdapter {
             }
         }
     }
-
-    private void addStackFramesToContainer(List<Object> stack) {
-        List<XStackFrame> frames = new ArrayList<XStackFrame>();
-        for (Object o : stack) {
-            if (o instanceof GdbMiResults) {
-                GdbMiResults res = (GdbMiResults) o;
-                frames.add(new GdbStackFrame((GdbExecutionStack) suspendContext.getActiveExecutionStack(), res.getTuple("frame")));
-            } else {
-                reportError("Invalid stack frames list entry");
-                return;
-            }
-        }
-        suspendContext.getStackFrameContainer().addStackFrames(frames, true);
-    }
-
-    private void reportError(String msg) {
-        LOG.warn("ERROR: " + msg);
-    }
 }
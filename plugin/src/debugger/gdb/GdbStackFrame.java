@@ -3,7 +3,6 @@ package com.siberika.idea.pascal.debugger.gdb;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.util.Computable;
-import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.ui.ColoredTextContainer;
@@ -25,10 +24,8 @@ import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
 import java.util.Collection;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -40,7 +37,6 @@ public class GdbStackFrame extends XStackFrame {
     private final GdbExecutionStack executionStack;
     private final GdbMiResults frame;
     private final int level;
-    private final ConcurrentMap<String, Collection<PasField>> fieldsMap = new ConcurrentHashMap<String, Collection<PasField>>();
     private XSourcePosition sourcePosition;
 
     public GdbStackFrame(GdbExecutionStack executionStack, GdbMiResults frame) {
@@ -67,8 +63,7 @@ public class GdbStackFrame extends XStackFrame {
             return null;
         }
 
-        String path = filename.replace(File.separatorChar, '/');
-        VirtualFile virtualFile = LocalFileSystem.getInstance().findFileByPath(path);
+        VirtualFile virtualFile = process.findSourceFile(filename);
         if (null == virtualFile) {
             return null;
         }
@@ -108,29 +103,36 @@ public class GdbStackFrame extends XStackFrame {
         if (!process.options.resolveNames() || (null == sourcePosition)) {
             return null;
         }
-        return ApplicationManager.getApplication().runReadAction(new Computable<PasField>() {
-            @Override
-            public PasField compute() {
-                PsiElement el = XDebuggerUtil.getInstance().findContextElement(sourcePosition.getFile(), sourcePosition.getOffset(), process.getSession().getProject(), false);
-                if (el != null) {
-                    Collection<PasField> fields = getFields(el, name);
-                    String id = name.substring(name.lastIndexOf('.') + 1);
-                    for (PasField field : fields) {
-                        if (types.contains(field.fieldType) && id.equalsIgnoreCase(field.name)) {
-                            return field;
-                        }
+        final ConcurrentMap<String, Collection<PasField>> fieldsMap = process.getResolveCache().getFields(sourcePosition);
+        // All simple names are looked up in the same namespace
+        final String key = name.lastIndexOf('.') > 0 ? name : "";
+        Collection<PasField> fields = fieldsMap.get(key);
+        if (null == fields) {
+            fields = ApplicationManager.getApplication().runReadAction(new Computable<Collection<PasField>>() {
+                @Override
+                public Collection<PasField> compute() {
+                    PsiElement el = XDebuggerUtil.getInstance().findContextElement(sourcePosition.getFile(), sourcePosition.getOffset(), process.getSession().getProject(), false);
+                    if (null == el) {
+                        return null;
                     }
+                    Collection<PasField> res = resolveFields(el, name);
+                    fieldsMap.put(key, res);
+                    return res;
+                }
+            });
+        }
+        if (fields != null) {
+            String id = name.substring(name.lastIndexOf('.') + 1);
+            for (PasField field : fields) {
+                if (types.contains(field.fieldType) && id.equalsIgnoreCase(field.name)) {
+                    return field;
                 }
-                return null;
             }
-        });
+        }
+        return null;
     }
 
-    private Collection<PasField> getFields(@NotNull PsiElement el, String name) {
-        Collection<PasField> fields = fieldsMap.get(name);
-        if (fields != null) {
-            return fields;
-        }
+    private static Collection<PasField> resolveFields(@NotNull PsiElement el, String name) {
         NamespaceRec namespace;
         int dotIndex = name.lastIndexOf('.');
         if (dotIndex > 0) {
@@ -144,9 +146,7 @@ public class GdbStackFrame extends XStackFrame {
         }
         namespace.clearTarget();
         namespace.setIgnoreVisibility(true);
-        fields = PasReferenceUtil.resolveExpr(namespace, new ResolveContext(PasField.TYPES_LOCAL, true), 0);
-        fieldsMap.put(name, fields);
-        return fields;
+        return PasReferenceUtil.resolveExpr(namespace, new ResolveContext(PasField.TYPES_LOCAL, true), 0);
     }
 
     @Nullable
@@ -157,8 +157,7 @@ public class GdbStackFrame extends XStackFrame {
 
     @Override
     public void computeChildren(@NotNull XCompositeNode node) {
-        process.setLastQueriedVariablesCompositeNode(node);
-        process.sendCommand(String.format("-stack-list-variables --thread %s --frame %d --simple-values", executionStack.getThreadId(), level));
+        process.computeFrameVariables(executionStack.getThreadId(), level, node);
     }
 
     public GdbExecutionStack getExecutionStack() {
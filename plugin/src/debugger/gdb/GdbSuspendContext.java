@@ -2,23 +2,28 @@ package com.siberika.idea.pascal.debugger.gdb;
 
 import com.intellij.xdebugger.frame.XExecutionStack;
 import com.intellij.xdebugger.frame.XSuspendContext;
+import com.siberika.idea.pascal.debugger.CommandCallback;
 import com.siberika.idea.pascal.debugger.PascalXDebugProcess;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiResults;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Author: George Bakhtadze
  * Date: 31/03/2017
  */
 public class GdbSuspendContext extends XSuspendContext {
     private final PascalXDebugProcess process;
-    private final XExecutionStack stack;
-    private XExecutionStack.XStackFrameContainer stackFrameContainer;
+    private final GdbExecutionStack stack;
 
     public GdbSuspendContext(PascalXDebugProcess process, GdbMiLine line) {
         this.process = process;
-        this.stack = new GdbExecutionStack(this, line);
+        this.stack = new GdbExecutionStack(this, line.getResults().getString("thread-id"), line.getResults().getTuple("frame"));
     }
 
     @Nullable
@@ -30,18 +35,45 @@ public class GdbSuspendContext extends XSuspendContext {
     @NotNull
     @Override
     public XExecutionStack[] getExecutionStacks() {
-        return super.getExecutionStacks();
+        return new XExecutionStack[] {stack};
     }
 
-    public PascalXDebugProcess getProcess() {
-        return process;
+    /**
+     * Lists all threads of the program. Threads which are running in non-stop mode are shown without frames.
+     */
+    @Override
+    public void computeExecutionStacks(final XExecutionStackContainer container) {
+        process.sendCommand("-thread-info", new CommandCallback() {
+            @Override
+            public void on(GdbMiLine res) {
+                List<Object> threads = PascalXDebugProcess.isDone(res) ? res.getResults().getList("threads") : null;
+                if (null == threads) {
+                    container.addExecutionStack(Collections.singletonList(stack), true);
+                    return;
+                }
+                List<XExecutionStack> stacks = new ArrayList<XExecutionStack>(threads.size());
+                for (Object o : threads) {
+                    if (o instanceof GdbMiResults) {
+                        GdbMiResults thread = (GdbMiResults) o;
+                        String id = thread.getString("id");
+                        if ((id != null) && id.equals(stack.getThreadId())) {
+                            stacks.add(stack);
+                        } else if (id != null) {
+                            GdbMiResults frame = "running".equals(thread.getString("state")) ? null : thread.getTuple("frame");
+                            stacks.add(new GdbExecutionStack(GdbSuspendContext.this, id, frame));
+                        }
+                    }
+                }
+                container.addExecutionStack(stacks, true);
+            }
+        });
     }
 
-    public XExecutionStack.XStackFrameContainer getStackFrameContainer() {
-        return stackFrameContainer;
+    public PascalXDebugProcess getProcess() {
+        return process;
     }
 
-    public void setStackFrameContainer(XExecutionStack.XStackFrameContainer stackFrameContainer) {
-        this.stackFrameContainer = stackFrameContainer;
+    public String getThreadId() {
+        return stack.getThreadId();
     }
 }
@@ -50,6 +50,17 @@ public class GdbVariableObject {
         childrenCount = res.getValue("numchild") != null ? res.getInteger("numchild") : 1;
     }
 
+    /**
+     * Updates the variable object from an entry of -var-update changelist which contains type and children count only if the type has changed
+     */
+    public void updateFromChange(GdbMiResults change) {
+        value = change.getString("value");
+        if ("true".equals(change.getString("type_changed"))) {
+            type = change.getString("new_type");
+            childrenCount = change.getValue("new_num_children") != null ? change.getInteger("new_num_children") : childrenCount;
+        }
+    }
+
     public String getType() {
         return type;
     }
@@ -7,10 +7,13 @@ import com.intellij.execution.ui.ConsoleView;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.xdebugger.XDebugSession;
+import com.siberika.idea.pascal.debugger.DebuggerFeatures;
 import com.siberika.idea.pascal.debugger.PascalXDebugProcess;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Author: George Bakhtadze
@@ -34,6 +37,11 @@ public class GdbXDebugProcess extends PascalXDebugProcess {
         return "\"";
     }
 
+    @Override
+    protected Collection<DebuggerFeatures.Feature> getDefaultFeatures() {
+        return EnumSet.allOf(DebuggerFeatures.Feature.class);
+    }
+
     @Override
     protected void init() {
         try {
@@ -48,7 +56,7 @@ public class GdbXDebugProcess extends PascalXDebugProcess {
             createOutputConsole();
         }
         console = (ConsoleView) executionResult.getExecutionConsole();
-        variableObjectMap = new HashMap<String, GdbVariableObject>();
+        variableObjectMap = new ConcurrentHashMap<String, GdbVariableObject>();
         sendCommand("-break-delete");
     }
 
@@ -57,6 +65,7 @@ public class GdbXDebugProcess extends PascalXDebugProcess {
         super.sessionInitialized();
         getProcessHandler().addProcessListener(new GdbProcessAdapter(this));
         sendCommand("-gdb-set target-async on");
+        enableNonStop();
         if (getData().getBoolean(PascalSdkData.Keys.DEBUGGER_REDIRECT_CONSOLE)) {
             if (SystemInfo.isWindows) {
                 sendCommand("-gdb-set new-console on");
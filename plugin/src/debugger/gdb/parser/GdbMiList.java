@@ -0,0 +1,32 @@
+package com.siberika.idea.pascal.debugger.gdb.parser;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * List value which converts constants to strings when they are accessed
+ */
+class GdbMiList extends AbstractList<Object> {
+    private final List<Object> data = new ArrayList<Object>(4);
+
+    @Override
+    public Object get(int index) {
+        Object value = data.get(index);
+        if (value instanceof GdbMiString) {
+            value = value.toString();
+            data.set(index, value);
+        }
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public boolean add(Object value) {
+        return data.add(value);
+    }
+}
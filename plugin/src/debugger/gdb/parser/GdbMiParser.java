@@ -1,69 +1,67 @@
 package com.siberika.idea.pascal.debugger.gdb.parser;
 
-import com.intellij.util.SmartList;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
 import java.util.regex.Pattern;
 
 /**
  * Author: George Bakhtadze
  * Date: 29/03/2017
+ *
+ * Single pass GDB/MI output parser. The kind of a list is determined by its first character so no backtracking is needed.
+ * Constants are not copied while parsing, they are converted to strings when accessed.
  */
 public class GdbMiParser {
 
-    private final String input;
+    // Unescaped quotes of Objective-C method names in lldb-mi output: ::"-[TMyWindow update]"
+    static final Pattern A = Pattern.compile("::\"-\\[(.*?)\\]\"");
+
+    private static final int NAME_CACHE_SIZE = 512;
+    // Names of results repeat a lot in big lists so the same instances are reused. Races are harmless as strings are immutable.
+    private static final String[] NAME_CACHE = new String[NAME_CACHE_SIZE];
+
+    private final CharSequence input;
     private final int end;
     private int pos = 0;
-    private char lastChar;
-
-    public static final Pattern A = Pattern.compile("::\"-\\[(.*?)\\]\"");
 
-    public GdbMiParser(@NotNull String input) {
-        this.input = A.matcher(input).replaceAll("::'-[$1]'");
+    public GdbMiParser(@NotNull CharSequence input) {
+        this.input = input;
         this.end = input.length();
     }
 
     private GdbMiLine parseLine() {
-        GdbMiLine result = new GdbMiLine(parseToken(), getType(lastChar), parseClass());
+        Long token = parseToken();
+        GdbMiLine.Type type = pos < end ? getType(input.charAt(pos++)) : null;
+        GdbMiLine result = new GdbMiLine(token, type, parseName());
         parseValues(result.getResults());
         return result;
     }
 
     // ( "," result )*
     private void parseValues(GdbMiResults dest) {
-        while (',' == lastChar) {
+        while (',' == peek()) {
+            pos++;
             parseResult(dest);
-            nextChar();
         }
     }
 
     // variable "=" value
     private void parseResult(GdbMiResults dest) {
-        String name = parseString();
+        String name = parseName();
         if (null == name) {
             return;
         }
-        if ('=' == lastChar) {
-            Object value = parseValueOrStop();
-            dest.setValue(name, value);
+        if ('=' == peek()) {
+            pos++;
+            dest.setValue(name, parseValue());
         } else {
             throw new GdbMiParserException("Error parsing result", pos, input);
         }
     }
 
-    private Object parseValueOrStop() {
-        Object value = parseValue();
-        if (value != null) {
-            return value;
-        } else {
-            throw new GdbMiParserException("Error parsing value", pos, input);
-        }
-    }
-
     // const | tuple | list
     private Object parseValue() {
-        switch (nextChar()) {
+        switch (peek()) {
             case '"':
                 return parseConst();
             case '{':
@@ -71,102 +69,121 @@ public class GdbMiParser {
             case '[':
                 return parseList();
             default:
-                return null;
+                throw new GdbMiParserException("Error parsing value", pos, input);
         }
     }
 
     // "[]" | "[" value ( "," value )* "]" | "[" result ( "," result )* "]"
     private Object parseList() {
-        Collection<Object> res = new SmartList<Object>();
-        int savePos = pos;
-        try {
-            parseValuesList(res);
-        } catch (GdbMiParserException e) {
-            pos = savePos;
-            parseResultsList(res);
-        }
-        if (lastChar != ']') {
-            throw new GdbMiParserException("Error parsing list", pos, input);
-        }
-        return res;
-    }
-
-    // result ( "," result )*
-    private void parseResultsList(Collection<Object> res) {
-        parseResultToList(res);
-        nextChar();
-        while (',' == lastChar) {
-            parseResultToList(res);
-            nextChar();
+        pos++;
+        GdbMiList res = new GdbMiList();
+        char c = peek();
+        if (']' == c) {
+            pos++;
+            return res;
         }
-    }
-
-    private void parseResultToList(Collection<Object> res) {
-        GdbMiResults r = new GdbMiResults();
-        parseResult(r);
-        res.add(r);
-    }
-
-    // value ( "," value )*
-    private void parseValuesList(Collection<Object> res) {
-        Object value = parseValue();
-        if (null == value) {
-            // empty list
-            if (']' == lastChar) {
-                return;
+        boolean results = isNameChar(c);
+        while (true) {
+            if (results) {
+                GdbMiResults r = new GdbMiResults();
+                parseResult(r);
+                res.add(r);
             } else {
-                throw new GdbMiParserException("Error parsing values list", pos, input);
+                res.add(parseValue());
             }
+            if (peek() != ',') {
+                break;
+            }
+            pos++;
         }
-        res.add(value);
-        nextChar();
-        while (',' == lastChar) {
-            res.add(parseValueOrStop());
-            nextChar();
-        }
+        expect(']', "Error parsing list");
+        return res;
     }
 
     // "{}" | "{" result ( "," result )* "}"
     private Object parseTuple() {
+        pos++;
         GdbMiResults res = new GdbMiResults();
-        parseResult(res);
-        // Empty tuple
-        if ('}' == lastChar) {
-            return res;
-        }
-        nextChar();
-        parseValues(res);
-        if ('}' != lastChar) {
-            throw new GdbMiParserException("Error parsing tuple", pos, input);
+        if ('}' != peek()) {
+            parseResult(res);
+            parseValues(res);
         }
+        expect('}', "Error parsing tuple");
         return res;
     }
 
     //  c-string
     private Object parseConst() {
-        StringBuilder t = new StringBuilder();
-        while (nextChar() != 0 && lastChar != '"') {
-            t = t.append(lastChar);
-            if ('\\' == lastChar) {
-                t = t.append(nextChar());
+        int start = ++pos;
+        boolean unescapedQuotes = false;
+        while (pos < end) {
+            char c = input.charAt(pos);
+            if ('\\' == c) {
+                pos += 2;
+            } else if ('"' == c) {
+                if (!isUnescapedQuote(pos)) {
+                    break;
+                }
+                int closing = indexOf("]\"", pos + 3);
+                if (closing < 0) {
+                    break;
+                }
+                unescapedQuotes = true;
+                pos = closing + 2;
+            } else {
+                pos++;
             }
         }
-        if ('"' != lastChar) {
-            throw new GdbMiParserException("Error parsing const", pos, input);
+        if (pos >= end) {
+            throw new GdbMiParserException("Error parsing const", start, input);
         }
-        return t.toString();
+        return new GdbMiString(input, start, pos++, unescapedQuotes);
+    }
+
+    private boolean isUnescapedQuote(int quotePos) {
+        return (quotePos >= 2) && (quotePos + 2 < end) && (':' == input.charAt(quotePos - 1)) && (':' == input.charAt(quotePos - 2))
+                && ('-' == input.charAt(quotePos + 1)) && ('[' == input.charAt(quotePos + 2));
     }
 
-    private String parseClass() {
-        return parseString();
+    private int indexOf(String s, int from) {
+        for (int i = from; i <= end - s.length(); i++) {
+            if (regionMatches(s, i)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    private String parseString() {
-        StringBuilder t = new StringBuilder();
-        while ((nextChar() >= 'a') && (lastChar <= 'z') || ('-' == lastChar) || ('_' == lastChar)) {
-            t = t.append(lastChar);
+    private boolean regionMatches(String s, int offset) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != input.charAt(offset + i)) {
+                return false;
+            }
         }
-        return t.length() > 0 ? t.toString() : null;
+        return true;
+    }
+
+    private String parseName() {
+        int start = pos;
+        int hash = 0;
+        while ((pos < end) && isNameChar(input.charAt(pos))) {
+            hash = 31 * hash + input.charAt(pos);
+            pos++;
+        }
+        if (pos == start) {
+            return null;
+        }
+        int index = hash & (NAME_CACHE_SIZE - 1);
+        String name = NAME_CACHE[index];
+        if ((null == name) || (name.length() != pos - start) || !regionMatches(name, start)) {
+            name = input.subSequence(start, pos).toString();
+            NAME_CACHE[index] = name;
+        }
+        return name;
+    }
+
+    private static boolean isNameChar(char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || ('-' == c) || ('_' == c);
     }
 
     private GdbMiLine.Type getType(char typeChar) {
@@ -190,19 +207,26 @@ public class GdbMiParser {
     }
 
     private Long parseToken() {
-        StringBuilder t = new StringBuilder();
-        while (Character.isDigit(nextChar())) {
-            t = t.append(lastChar);
+        long token = 0;
+        int start = pos;
+        while ((pos < end) && Character.isDigit(input.charAt(pos))) {
+            token = token * 10 + (input.charAt(pos++) - '0');
         }
-        return t.length() > 0 ? Long.parseLong(t.toString()) : null;
+        return pos > start ? token : null;
+    }
+
+    private char peek() {
+        return pos < end ? input.charAt(pos) : 0;
     }
 
-    private char nextChar() {
-        lastChar = pos < end ? input.charAt(pos++) : 0;
-        return lastChar;
+    private void expect(char c, String message) {
+        if (peek() != c) {
+            throw new GdbMiParserException(message, pos, input);
+        }
+        pos++;
     }
 
-    public static GdbMiLine parseLine(String line) {
+    public static GdbMiLine parseLine(CharSequence line) {
         return new GdbMiParser(line).parseLine();
     }
 /*
@@ -8,10 +8,10 @@ public class GdbMiParserException extends RuntimeException {
     private final int pos;
     private final String input;
 
-    public GdbMiParserException(String msg, int pos, String input) {
-        super(String.format("%s at %d, \"%s\"", msg, pos, input.substring(pos)));
+    public GdbMiParserException(String msg, int pos, CharSequence input) {
+        super(String.format("%s at %d, \"%s\"", msg, pos, input.subSequence(Math.min(pos, input.length()), input.length())));
         this.pos = pos;
-        this.input = input;
+        this.input = input.toString();
     }
 
     public int getPos() {
@@ -20,7 +20,12 @@ public class GdbMiResults {
 
     public Object getValue(String name) {
         ensureData();
-        return data.get(name);
+        Object value = data.get(name);
+        if (value instanceof GdbMiString) {
+            value = value.toString();
+            data.put(name, value);
+        }
+        return value;
     }
 
     private void ensureData() {
@@ -0,0 +1,25 @@
+package com.siberika.idea.pascal.debugger.gdb.parser;
+
+/**
+ * Constant value referencing a range of parser input. Converted to string on first access by GdbMiResults or GdbMiList.
+ * Escape sequences are kept as is.
+ */
+final class GdbMiString {
+    private final CharSequence input;
+    private final int start;
+    private final int end;
+    private final boolean unescapedQuotes;
+
+    GdbMiString(CharSequence input, int start, int end, boolean unescapedQuotes) {
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        this.unescapedQuotes = unescapedQuotes;
+    }
+
+    @Override
+    public String toString() {
+        String res = input.subSequence(start, end).toString();
+        return unescapedQuotes ? GdbMiParser.A.matcher(res).replaceAll("::'-[$1]'") : res;
+    }
+}
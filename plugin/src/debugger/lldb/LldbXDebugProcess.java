@@ -6,12 +6,15 @@ import com.intellij.execution.ui.ConsoleView;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.xdebugger.XDebugSession;
+import com.siberika.idea.pascal.debugger.DebuggerFeatures;
 import com.siberika.idea.pascal.debugger.PascalXDebugProcess;
 import com.siberika.idea.pascal.debugger.gdb.GdbProcessAdapter;
 import com.siberika.idea.pascal.debugger.gdb.GdbVariableObject;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Author: George Bakhtadze
@@ -35,13 +38,19 @@ public class LldbXDebugProcess extends PascalXDebugProcess {
         return "";
     }
 
+    // lldb-mi requires a variable object name in -var-update, doesn't accept options of -exec-continue, has no dprintf and no non-stop mode
+    @Override
+    protected Collection<DebuggerFeatures.Feature> getDefaultFeatures() {
+        return EnumSet.of(DebuggerFeatures.Feature.VAR_LIST_CHILDREN_RANGE, DebuggerFeatures.Feature.STACK_FRAMES_RANGE);
+    }
+
     @Override
     protected void init() {
         if (isOutputConsoleNeeded()) {
             createOutputConsole();
         }
         console = (ConsoleView) executionResult.getExecutionConsole();
-        variableObjectMap = new HashMap<String, GdbVariableObject>();
+        variableObjectMap = new ConcurrentHashMap<String, GdbVariableObject>();
 
         sendCommand("-interpreter-exec console \"br delete\"");
     }
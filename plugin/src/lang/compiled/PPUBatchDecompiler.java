@@ -0,0 +1,190 @@
+package com.siberika.idea.pascal.lang.compiled;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderRootType;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileVisitor;
+import com.intellij.util.FileContentUtil;
+import com.siberika.idea.pascal.PPUFileType;
+import com.siberika.idea.pascal.PascalBundle;
+import com.siberika.idea.pascal.sdk.FPCSdkType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class PPUBatchDecompiler extends Task.Backgroundable {
+
+    private static final Logger LOG = Logger.getInstance(PPUBatchDecompiler.class);
+
+    private final PPUDecompilerCache cache;
+    private final Module module;
+
+    private PPUBatchDecompiler(@NotNull PPUDecompilerCache cache) {
+        super(cache.getModule().getProject(), PascalBundle.message("decompile.batch.title"), true);
+        this.cache = cache;
+        this.module = cache.getModule();
+    }
+
+    // SDKs which units are already decompiled or being decompiled. Decompiled units are available from disk cache for any module.
+    private static final Set<Sdk> SCHEDULED = Collections.newSetFromMap(new WeakHashMap<Sdk, Boolean>());
+
+    /**
+     * Schedules background decompilation of all compiled units of the SDK unless it's already scheduled for the SDK
+     */
+    static void schedule(@NotNull final PPUDecompilerCache cache, @NotNull Sdk sdk) {
+        if (ApplicationManager.getApplication().isUnitTestMode()) {
+            return;
+        }
+        synchronized (SCHEDULED) {
+            if (!SCHEDULED.add(sdk)) {
+                return;
+            }
+        }
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!cache.getModule().isDisposed()) {
+                    ProgressManager.getInstance().run(new PPUBatchDecompiler(cache));
+                }
+            }
+        });
+    }
+
+    /**
+     * Allows decompilation of the SDK's units to be scheduled again, e.g. when decompiler is changed
+     */
+    static void reset(@NotNull Sdk sdk) {
+        synchronized (SCHEDULED) {
+            SCHEDULED.remove(sdk);
+        }
+    }
+
+    @Override
+    public void run(@NotNull ProgressIndicator indicator) {
+        final Collection<VirtualFile> files = collectFiles();
+        if (files.isEmpty()) {
+            return;
+        }
+        indicator.setIndeterminate(false);
+        // ppudump runs are performed in parallel while parsing is done in this thread as it may recursively decompile used units
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Pair<VirtualFile, String>> completion = new ExecutorCompletionService<Pair<VirtualFile, String>>(executor);
+        List<VirtualFile> decompiled = new ArrayList<VirtualFile>(files.size());
+        try {
+            Iterator<VirtualFile> iterator = files.iterator();
+            int pending = 0;
+            int done = 0;
+            while (iterator.hasNext() || (pending > 0)) {
+                indicator.checkCanceled();
+                // at most two ppudump outputs per thread are kept in memory
+                while (iterator.hasNext() && (pending < threads * 2)) {
+                    completion.submit(new Dump(iterator.next()));
+                    pending++;
+                }
+                Future<Pair<VirtualFile, String>> future = completion.take();
+                pending--;
+                done++;
+                Pair<VirtualFile, String> result = getResult(future);
+                if (result != null) {
+                    indicator.setText(PascalBundle.message("decompile.batch.progress", result.first.getName(), done, files.size()));
+                    if (cache.preload(result.first, result.second)) {
+                        decompiled.add(result.first);
+                    }
+                }
+                indicator.setFraction((double) done / files.size());
+            }
+        } catch (InterruptedException e) {
+            throw new ProcessCanceledException();
+        } finally {
+            executor.shutdownNow();
+        }
+        reparse(decompiled);
+    }
+
+    private Pair<VirtualFile, String> getResult(Future<Pair<VirtualFile, String>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOG.info("Error running ppudump: " + e.getMessage(), e.getCause());
+            return null;
+        }
+    }
+
+    // One reparse for all decompiled units instead of one per unit
+    private void reparse(final List<VirtualFile> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!module.isDisposed()) {
+                    FileContentUtil.reparseFiles(module.getProject(), files, false);
+                }
+            }
+        });
+    }
+
+    private Collection<VirtualFile> collectFiles() {
+        return ApplicationManager.getApplication().runReadAction(new Computable<Collection<VirtualFile>>() {
+            @Override
+            public Collection<VirtualFile> compute() {
+                final List<VirtualFile> res = new ArrayList<VirtualFile>();
+                Sdk sdk = module.isDisposed() ? null : ModuleRootManager.getInstance(module).getSdk();
+                if ((null == sdk) || !(sdk.getSdkType() instanceof FPCSdkType)) {
+                    return res;
+                }
+                for (VirtualFile root : sdk.getRootProvider().getFiles(OrderRootType.CLASSES)) {
+                    VfsUtilCore.visitChildrenRecursively(root, new VirtualFileVisitor() {
+                        @Override
+                        public boolean visitFile(@NotNull VirtualFile file) {
+                            if (!file.isDirectory() && PPUFileType.INSTANCE.getDefaultExtension().equalsIgnoreCase(file.getExtension())) {
+                                res.add(file);
+                            }
+                            return true;
+                        }
+                    });
+                }
+                return res;
+            }
+        });
+    }
+
+    private class Dump implements Callable<Pair<VirtualFile, String>> {
+        private final VirtualFile file;
+
+        private Dump(VirtualFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public Pair<VirtualFile, String> call() throws Exception {
+            return Pair.create(file, cache.prepareXml(file));
+        }
+    }
+}
@@ -3,11 +3,13 @@ package com.siberika.idea.pascal.lang.compiled;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.siberika.idea.pascal.PPUFileType;
@@ -24,11 +26,15 @@ import com.siberika.idea.pascal.util.StrUtil;
 import com.siberika.idea.pascal.util.SysUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.xml.sax.SAXParseException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -52,7 +58,7 @@ public class PPUDecompilerCache {
     }
 
     public static String decompile(Module module, String filename, @Nullable VirtualFile file) {
-        Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+        Sdk sdk = getSdk(module);
         if (null == sdk) { return PascalBundle.message("decompile.wrong.sdk"); }
         PPUDecompilerCache decompilerCache;
         //noinspection SynchronizationOnLocalVariableOrMethodParameter
@@ -61,6 +67,7 @@ public class PPUDecompilerCache {
             if ((null == decompilerCache) || (decompilerCache.module != module)) {
                 decompilerCache = new PPUDecompilerCache(module);
                 BasePascalSdkType.getAdditionalData(sdk).setValue(PascalSdkData.Keys.DECOMPILER_CACHE.getKey(), decompilerCache);
+                PPUBatchDecompiler.schedule(decompilerCache, sdk);
             }
         }
         String unitName = FileUtil.getNameWithoutExtension(com.siberika.idea.pascal.jps.util.FileUtil.getFilename(filename));
@@ -68,55 +75,182 @@ public class PPUDecompilerCache {
         return stub != null ? stub.getResult() : "";
     }
 
+    /**
+     * Drops decompiled units of the SDK kept in memory and allows their batch decompilation to run again
+     */
+    public static void invalidate(@NotNull Sdk sdk) {
+        //noinspection SynchronizationOnLocalVariableOrMethodParameter
+        synchronized (sdk) {
+            BasePascalSdkType.getAdditionalData(sdk).setValue(PascalSdkData.Keys.DECOMPILER_CACHE.getKey(), null);
+            PPUBatchDecompiler.reset(sdk);
+        }
+    }
+
     private class Loader extends CacheLoader<String, PPUDumpParser.Section> {
         @Override
         public PPUDumpParser.Section load(@NotNull String key) {
-            File ppuDump = null;
-            String xml = "";
-            try {
-                ppuDump = retrievePpuDump(key);
-                xml = retrieveXml(key, ppuDump);
-                if (xml != null) {
-                    return PPUDumpParser.parse(xml, PPUDecompilerCache.this);
-                } else {
-                    return new PPUDumpParser.Section(PascalBundle.message("decompile.empty.result"));
+            return decompileUnit(key, null);
+        }
+    }
+
+    /**
+     * Decompiles unit using persistent cache if possible
+     * @param key          unit name
+     * @param preparedXml  ppudump output for the unit if it was already obtained or null
+     * @return             decompiled unit
+     */
+    private PPUDumpParser.Section decompileUnit(@NotNull String key, @Nullable String preparedXml) {
+        File ppuDump = null;
+        String xml = "";
+        try {
+            ppuDump = retrievePpuDump(key);
+            File ppu = retrievePpuFile(key);
+            String toolStamp = ppuDump != null ? PPUDiskCache.getToolStamp(ppuDump) : null;
+            if ((null == preparedXml) && (ppu != null) && (toolStamp != null)) {
+                PPUDumpParser.Section section = PPUDiskCache.getInstance().load(ppu, toolStamp);
+                if (section != null) {
+                    return section;
                 }
-            } catch (PascalRTException e) {
-                LOG.info("Exception: " + e.getMessage(), e);
-                return new PPUDumpParser.Section(e.getMessage());
-            } catch (IOException e) {
-                LOG.info("I/O error: " + e.getMessage(), e);
-                return new PPUDumpParser.Section(PascalBundle.message("decompile.io.error"));
-            } catch (ParseException e) {
-                LOG.info("Parse error: " + e.getMessage(), e);
-                String ver = getPPUDumpVersion(ppuDump);
-                if (ver.compareTo(PPUDUMP_VERSION_MIN) < 0) {
-                    return new PPUDumpParser.Section(PascalBundle.message("decompile.version.error", ver, PPUDUMP_VERSION_MIN));
-                } else {
-                    return new PPUDumpParser.Section(PascalBundle.message("decompile.parse.error", xml));
+            }
+            PPUDumpParser.Section section;
+            if (preparedXml != null) {
+                xml = preparedXml;
+                section = PPUDumpParser.parse(xml, PPUDecompilerCache.this);
+            } else {
+                section = retrieveSection(key, ppuDump);
+            }
+            if (section != null) {
+                // units with unresolved references are decompiled again next time when used units may be available
+                if ((ppu != null) && (toolStamp != null) && !section.hasUnresolved()) {
+                    PPUDiskCache.getInstance().save(ppu, toolStamp, section);
                 }
-            } catch (PascalException e1) {
-                return new PPUDumpParser.Section(e1.getMessage());
-            } catch (ProcessCanceledException e) {
-                throw e;
-            } catch (Exception e) {
-                LOG.info("Unknown error: " + e.getMessage(), e);
-                return new PPUDumpParser.Section(PascalBundle.message("decompile.unknown.error", StrUtil.limit(xml, 2048)));
+                return section;
+            } else {
+                return new PPUDumpParser.Section(PascalBundle.message("decompile.empty.result"));
+            }
+        } catch (PascalRTException e) {
+            LOG.info("Exception: " + e.getMessage(), e);
+            return new PPUDumpParser.Section(e.getMessage());
+        } catch (IOException e) {
+            LOG.info("I/O error: " + e.getMessage(), e);
+            return new PPUDumpParser.Section(PascalBundle.message("decompile.io.error"));
+        } catch (ParseException e) {
+            LOG.info("Parse error: " + e.getMessage(), e);
+            String ver = getPPUDumpVersion(ppuDump);
+            if (ver.compareTo(PPUDUMP_VERSION_MIN) < 0) {
+                return new PPUDumpParser.Section(PascalBundle.message("decompile.version.error", ver, PPUDUMP_VERSION_MIN));
+            } else {
+                return new PPUDumpParser.Section(PascalBundle.message("decompile.parse.error", getErrorDetails(key, xml, e)));
+            }
+        } catch (PascalException e1) {
+            return new PPUDumpParser.Section(e1.getMessage());
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.info("Unknown error: " + e.getMessage(), e);
+            return new PPUDumpParser.Section(PascalBundle.message("decompile.unknown.error", getErrorDetails(key, xml, e)));
+        }
+    }
+
+    // ppudump output which is parsed as it's produced is not available so the error is described by unit name and parser position
+    private static String getErrorDetails(String key, String xml, Exception e) {
+        if (!xml.isEmpty()) {
+            return StrUtil.limit(xml, 2048);
+        }
+        String position = "";
+        if (e instanceof ParseException) {
+            position = String.format(" at offset %d", ((ParseException) e).getErrorOffset());
+        } else if (e instanceof SAXParseException) {
+            position = String.format(" at line %d, column %d", ((SAXParseException) e).getLineNumber(), ((SAXParseException) e).getColumnNumber());
+        }
+        return String.format("unit %s%s: %s", key, position, e.getMessage());
+    }
+
+    /**
+     * Runs ppudump for the compiled unit unless it's already decompiled in memory or on disk.
+     * Used for batch decompilation and safe to call from multiple threads.
+     * @param file  compiled unit
+     * @return      ppudump output or null if no decompilation needed
+     */
+    @Nullable
+    String prepareXml(@NotNull VirtualFile file) throws IOException, PascalException {
+        String key = getKey(file.getName());
+        if (cache.getIfPresent(key) != null) {
+            return null;
+        }
+        File ppuDump = retrievePpuDump(key);
+        if (file.isInLocalFileSystem() && PPUDiskCache.getInstance().contains(new File(file.getPath()), PPUDiskCache.getToolStamp(ppuDump))) {
+            return null;
+        }
+        return runPpuDump(ppuDump, file.getPath());
+    }
+
+    /**
+     * Puts decompiled unit to cache using ppudump output obtained with prepareXml()
+     * @param file  compiled unit
+     * @param xml   ppudump output or null to take result from persistent cache
+     * @return      true if decompiled successfully
+     */
+    boolean preload(@NotNull VirtualFile file, @Nullable final String xml) {
+        final String key = getKey(file.getName());
+        try {
+            PPUDumpParser.Section section = cache.get(key, new Callable<PPUDumpParser.Section>() {
+                @Override
+                public PPUDumpParser.Section call() {
+                    return decompileUnit(key, xml);
+                }
+            });
+            if (section.isError()) {
+                cache.invalidate(key);
+                return false;
             }
+            return true;
+        } catch (ExecutionException e) {
+            LOG.info(String.format("Error: Exception while decompiling unit %s: %s", key, e.getMessage()), e);
+            return false;
         }
     }
 
-    String retrieveXml(String key, File ppuDump) throws IOException, PascalException {
-        Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+    Module getModule() {
+        return module;
+    }
+
+    /**
+     * Runs ppudump for the unit and parses its output as it's produced.
+     * Used units are decompiled after ppudump is finished so the process timeout doesn't include their decompilation.
+     * @return  decompiled unit or null if ppudump output is empty
+     */
+    PPUDumpParser.Section retrieveSection(String key, File ppuDump) throws Exception {
         Collection<VirtualFile> files = ModuleUtil.getCompiledByNameNoCase(module, key, PPUFileType.INSTANCE);
         if (files.isEmpty()) {
             throw new PascalRTException(PascalBundle.message("decompile.file.notfound", key));
         }
-        return SysUtils.runAndGetStdOut(sdk.getHomePath(), ppuDump.getCanonicalPath(), PPUDUMP_OPTIONS_COMMON, PPUDUMP_OPTIONS_FORMAT, files.iterator().next().getPath());
+        PPUDumpParser.Section section = SysUtils.runAndProcessStdOut(getWorkDir(ppuDump), ppuDump.getCanonicalPath(), new SysUtils.OutputProcessor<PPUDumpParser.Section>() {
+            @Override
+            public PPUDumpParser.Section process(@NotNull InputStream stdout) throws Exception {
+                return PPUDumpParser.parseUnresolved(stdout);
+            }
+        }, PPUDUMP_OPTIONS_COMMON, PPUDUMP_OPTIONS_FORMAT, files.iterator().next().getPath());
+        return PPUDumpParser.resolveUsed(section, this);
+    }
+
+    private String runPpuDump(File ppuDump, String ppuPath) throws IOException, PascalException {
+        return SysUtils.runAndGetStdOut(getWorkDir(ppuDump), ppuDump.getCanonicalPath(), PPUDUMP_OPTIONS_COMMON, PPUDUMP_OPTIONS_FORMAT, ppuPath);
+    }
+
+    private String getWorkDir(File ppuDump) {
+        Sdk sdk = getSdk(module);
+        return (sdk != null) && (sdk.getHomePath() != null) ? sdk.getHomePath() : ppuDump.getParent();
+    }
+
+    @Nullable
+    File retrievePpuFile(String key) {
+        VirtualFile file = retrieveFile(module, key);
+        return file != null && file.isInLocalFileSystem() ? new File(file.getPath()) : null;
     }
 
     File retrievePpuDump(String key) throws IOException {
-        Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+        Sdk sdk = getSdk(module);
         if (null == sdk) { throw new PascalRTException(PascalBundle.message("decompile.wrong.sdk")); }
         if ((sdk.getHomePath() == null) || !(sdk.getSdkType() instanceof FPCSdkType)) {
             throw new PascalRTException(PascalBundle.message("decompile.wrong.sdktype"));
@@ -128,6 +262,17 @@ public class PPUDecompilerCache {
         return ppuDump;
     }
 
+    // Module roots may only be accessed within read action while decompilation is performed in pooled threads too
+    @Nullable
+    private static Sdk getSdk(@NotNull final Module module) {
+        return ApplicationManager.getApplication().runReadAction(new Computable<Sdk>() {
+            @Override
+            public Sdk compute() {
+                return module.isDisposed() ? null : ModuleRootManager.getInstance(module).getSdk();
+            }
+        });
+    }
+
     private static String getPPUDumpVersion(File ppuDump) {
         String res = "";
         try {
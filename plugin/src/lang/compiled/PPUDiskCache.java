@@ -0,0 +1,222 @@
+package com.siberika.idea.pascal.lang.compiled;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.siberika.idea.pascal.util.SysUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class PPUDiskCache {
+    private static final Logger LOG = Logger.getInstance(PPUDiskCache.class);
+
+    // Increment on any change of entry format or of decompiled text generation
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_DIR = "pascal" + File.separator + "ppu";
+    private static final String EXT = ".ppuc";
+
+    private static final PPUDiskCache INSTANCE = new PPUDiskCache(new File(PathManager.getSystemPath(), CACHE_DIR));
+
+    private final File dir;
+
+    PPUDiskCache(@NotNull File dir) {
+        this.dir = dir;
+    }
+
+    static PPUDiskCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns stamp of ppudump executable which identifies its version without launching it
+     */
+    static String getToolStamp(@NotNull File ppuDump) {
+        return ppuDump.getPath() + ":" + ppuDump.length() + ":" + ppuDump.lastModified();
+    }
+
+    /**
+     * Loads decompiled unit from disk
+     * @param ppu        compiled unit file
+     * @param toolStamp  stamp of ppudump executable
+     * @return           decompiled unit or null if there is no valid entry for the file
+     */
+    @Nullable
+    synchronized PPUDumpParser.Section load(@NotNull File ppu, @NotNull String toolStamp) {
+        File entry = getEntryFile(ppu);
+        if (!entry.isFile()) {
+            return null;
+        }
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            if (!isValid(is, ppu, toolStamp)) {
+                return null;
+            }
+            String text = readString(is);
+            Map<String, String> idNameMap = readMap(is);
+            Map<String, String> symidNameMap = readMap(is);
+            return PPUDumpParser.Section.restore(text, idNameMap, symidNameMap);
+        } catch (IOException e) {
+            LOG.info("Error reading ppu cache entry: " + entry.getPath(), e);
+            return null;
+        } finally {
+            SysUtils.close(is);
+        }
+    }
+
+    /**
+     * Checks if there is a valid entry for the file without reading the decompiled unit
+     * @param ppu        compiled unit file
+     * @param toolStamp  stamp of ppudump executable
+     */
+    synchronized boolean contains(@NotNull File ppu, @NotNull String toolStamp) {
+        File entry = getEntryFile(ppu);
+        if (!entry.isFile()) {
+            return false;
+        }
+        DataInputStream is = null;
+        try {
+            is = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+            return isValid(is, ppu, toolStamp);
+        } catch (IOException e) {
+            LOG.info("Error reading ppu cache entry: " + entry.getPath(), e);
+            return false;
+        } finally {
+            SysUtils.close(is);
+        }
+    }
+
+    // Reads entry header and checks that the entry corresponds to current version of the file and ppudump
+    private static boolean isValid(DataInputStream is, File ppu, String toolStamp) throws IOException {
+        if ((is.readInt() != FORMAT_VERSION) || !ppu.getPath().equals(is.readUTF()) || !toolStamp.equals(is.readUTF())) {
+            return false;
+        }
+        long length = is.readLong();
+        long modified = is.readLong();
+        byte[] hash = readBytes(is);
+        if (length != ppu.length()) {
+            return false;
+        }
+        return (modified == ppu.lastModified()) || Arrays.equals(hash, calcHash(ppu));
+    }
+
+    /**
+     * Stores decompiled unit to disk. Error results are not stored.
+     * @param ppu        compiled unit file
+     * @param toolStamp  stamp of ppudump executable
+     * @param section    decompiled unit
+     */
+    synchronized void save(@NotNull File ppu, @NotNull String toolStamp, @NotNull PPUDumpParser.Section section) {
+        if (section.isError()) {
+            return;
+        }
+        File entry = getEntryFile(ppu);
+        File temp = new File(entry.getPath() + ".tmp");
+        DataOutputStream os = null;
+        try {
+            FileUtil.createParentDirs(temp);
+            os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            os.writeInt(FORMAT_VERSION);
+            os.writeUTF(ppu.getPath());
+            os.writeUTF(toolStamp);
+            os.writeLong(ppu.length());
+            os.writeLong(ppu.lastModified());
+            writeBytes(os, calcHash(ppu));
+            writeString(os, section.getResult());
+            writeMap(os, section.idNameMap);
+            writeMap(os, section.symidNameMap);
+            os.close();
+            os = null;
+            FileUtil.rename(temp, entry);
+        } catch (IOException e) {
+            LOG.info("Error writing ppu cache entry: " + entry.getPath(), e);
+            FileUtil.delete(temp);
+        } finally {
+            SysUtils.close(os);
+        }
+    }
+
+    synchronized void clear() {
+        FileUtil.delete(dir);
+    }
+
+    private File getEntryFile(File ppu) {
+        String name = FileUtil.getNameWithoutExtension(ppu.getName()).toLowerCase();
+        return new File(dir, name + "_" + Integer.toHexString(ppu.getPath().hashCode()) + EXT);
+    }
+
+    private static byte[] calcHash(File file) throws IOException {
+        InputStream is = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            is = new BufferedInputStream(new FileInputStream(file));
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = is.read(buf)) > 0) {
+                digest.update(buf, 0, len);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        } finally {
+            SysUtils.close(is);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream os, byte[] bytes) throws IOException {
+        os.writeInt(bytes.length);
+        os.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream is) throws IOException {
+        byte[] res = new byte[is.readInt()];
+        is.readFully(res);
+        return res;
+    }
+
+    // DataOutput.writeUTF() is limited to 64K which is not enough for decompiled units
+    private static void writeString(DataOutputStream os, String str) throws IOException {
+        writeBytes(os, str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream is) throws IOException {
+        return new String(readBytes(is), StandardCharsets.UTF_8);
+    }
+
+    private static void writeMap(DataOutputStream os, @Nullable Map<String, String> map) throws IOException {
+        if (null == map) {
+            os.writeInt(0);
+            return;
+        }
+        os.writeInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeString(os, entry.getKey());
+            writeString(os, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(DataInputStream is) throws IOException {
+        int size = is.readInt();
+        Map<String, String> res = new HashMap<String, String>(size * 2);
+        for (int i = 0; i < size; i++) {
+            res.put(readString(is), readString(is));
+        }
+        return res;
+    }
+}
@@ -4,6 +4,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import com.siberika.idea.pascal.PascalBundle;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -18,6 +19,7 @@ import java.text.ParseException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
@@ -37,17 +39,86 @@ public class PPUDumpParser {
 
     private static final Logger LOG = Logger.getInstance(PPUDumpParser.class);
     static final String UNRESOLVED_INTERNAL = "__INTERNAL__";
+    // prefix of placeholders for references which failed to resolve
+    static final String UNRESOLVED = "__unresolved_";
     static final String INDENT = "  ";
     private static final String LF = "\n@";
+    // bounds of placeholders for references to used units which are not resolved yet
+    private static final char USED_REF_START = '\u0001';
+    private static final char USED_REF_END = '\u0002';
 
     public static Section parse(InputStream inputStream, PPUDecompilerCache cache) throws ParseException, ParserConfigurationException, SAXException, IOException {
+        return resolveUsed(parseUnresolved(inputStream), cache);
+    }
+
+    /**
+     * Parses ppudump output without access to used units. References to them are resolved later with resolveUsed().
+     * @return parsed unit or null if there is no unit in the output
+     */
+    @Nullable
+    static Section parseUnresolved(InputStream inputStream) throws ParseException, ParserConfigurationException, SAXException, IOException {
         SAXParserFactory factory = SAXParserFactory.newInstance();
         SAXParser parser = factory.newSAXParser();
-        XMLHandler handler = new XMLHandler(cache);
+        XMLHandler handler = new XMLHandler();
         parser.parse(inputStream, handler);
+        if (handler.result != null) {
+            handler.result.usedRefs = handler.usedRefs;
+        }
         return handler.result;
     }
 
+    /**
+     * Resolves references to used units obtaining them from the cache which may decompile the units
+     * @return the same section with references resolved
+     */
+    @Nullable
+    static Section resolveUsed(@Nullable Section section, @Nullable PPUDecompilerCache cache) {
+        if ((null == section) || section.usedRefs.isEmpty()) {
+            return section;
+        }
+        Map<String, Section> units = new HashMap<String, Section>();
+        String[] names = new String[section.usedRefs.size()];
+        for (int i = 0; i < names.length; i++) {
+            UsedReference ref = section.usedRefs.get(i);
+            if (!units.containsKey(ref.unitName)) {
+                units.put(ref.unitName, cache != null ? cache.getContents(ref.unitName, null) : null);
+            }
+            names[i] = ref.resolve(units.get(ref.unitName));
+        }
+        section.sb = new StringBuilder(replaceUsed(section.sb, names));
+        replaceUsed(section.idNameMap, names);
+        replaceUsed(section.symidNameMap, names);
+        section.usedRefs = Collections.emptyList();
+        return section;
+    }
+
+    private static void replaceUsed(@Nullable Map<String, String> nameMap, String[] names) {
+        if (nameMap != null) {
+            for (Map.Entry<String, String> entry : nameMap.entrySet()) {
+                entry.setValue(replaceUsed(entry.getValue(), names));
+            }
+        }
+    }
+
+    private static String replaceUsed(CharSequence text, String[] names) {
+        StringBuilder res = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i++);
+            if (c == USED_REF_START) {
+                int index = 0;
+                while ((i < text.length()) && (text.charAt(i) != USED_REF_END)) {
+                    index = index * 10 + text.charAt(i++) - '0';
+                }
+                i++;
+                res.append(names[index]);
+            } else {
+                res.append(c);
+            }
+        }
+        return res.toString();
+    }
+
     public static Section parse(@NotNull String xml, PPUDecompilerCache cache) throws ParseException, ParserConfigurationException, SAXException, IOException {
         return parse(new ByteArrayInputStream(xml.getBytes("utf-8")), cache);
     }
@@ -137,11 +208,8 @@ public class PPUDumpParser {
             NAME_SUB.put("False", "__False");
         }
 
-        private final PPUDecompilerCache cache;
-
-        private XMLHandler(PPUDecompilerCache cache) {
-            this.cache = cache;
-        }
+        // references to used units are resolved after parsing as it may require decompilation of the units
+        private final List<UsedReference> usedRefs = new ArrayList<UsedReference>();
 
         private static Section addSection(String id, String textBegin, String afterName, String beforeSubsec, String textEnd, int removeChars) {
             Section res = new Section(id, textBegin, afterName, beforeSubsec, textEnd, removeChars);
@@ -431,7 +499,7 @@ public class PPUDumpParser {
             Object unit = sec.data.get(refName + "/unit");
             if (unit != null) {
                 pos = sec.insertText(pos, prefix);
-                pos = resolveUsed(sec, pos, sec.data.get(refName + "/id"), sec.data.get(refName + "/symid"), Integer.parseInt((String) unit));
+                pos = appendUsedReference(sec, pos, sec.data.get(refName + "/id"), sec.data.get(refName + "/symid"), Integer.parseInt((String) unit));
                 pos = sec.insertText(pos, postfix);
             } else {
                 appendLocalReference(sec, pos, sec.data.get(refName + "/id"), sec.data.get(refName + "/symid"), prefix, postfix, def,
@@ -466,17 +534,11 @@ public class PPUDumpParser {
             return pos;
         }
 
-        @SuppressWarnings("UnusedAssignment")
-        private int resolveUsed(Section sec, int pos, Object id, Object symid, int unitIndex) {
+        private int appendUsedReference(Section sec, int pos, Object id, Object symid, int unitIndex) {
             String unitName = getUnit(unitIndex);
             pos = sec.insertText(pos, unitName + ".");
-            String def = "__unresolved_" + id;
-            Section section = cache != null ? cache.getContents(unitName, null) : null;
-            if (section != null) {
-                return appendLocalReference(sec, pos, id, symid, "", "", def, section.idNameMap, section.symidNameMap);
-            } else {
-                return sec.insertText(pos, def);
-            }
+            usedRefs.add(new UsedReference(unitName, id, symid));
+            return sec.insertText(pos, USED_REF_START + Integer.toString(usedRefs.size() - 1) + USED_REF_END);
         }
 
         private String getUnit(int unitIndex) {
@@ -628,13 +690,41 @@ public class PPUDumpParser {
                     nameMap = symidNameMap;
                 }
                 String res = nameMap.get(key.substring(1));
-                res = res != null ? res : "__unresolved__";
+                res = res != null ? res : UNRESOLVED + "_";
                 result.insertText(pos, res);
             }
             result.insertText(0, PascalBundle.message("decompiled.unit.header"));
         }
     }
 
+    private static class UsedReference {
+        private final String unitName;
+        private final Object id;
+        private final Object symid;
+
+        private UsedReference(String unitName, Object id, Object symid) {
+            this.unitName = unitName;
+            this.id = id;
+            this.symid = symid;
+        }
+
+        private String resolve(@Nullable Section unit) {
+            Object key = id != null ? id : symid;
+            if (null == key) {
+                return "";
+            }
+            Map<String, String> nameMap = unit != null ? (id != null ? unit.idNameMap : unit.symidNameMap) : null;
+            @SuppressWarnings("SuspiciousMethodCalls")
+            String ref = nameMap != null ? nameMap.get(key) : null;
+            if (StringUtil.isEmpty(ref)) {
+                return UNRESOLVED + key;
+            } else if ("$formal".equalsIgnoreCase(ref) || "$void".equalsIgnoreCase(ref)) {
+                return "";
+            }
+            return ref;
+        }
+    }
+
     static class Section {
         final String type;
         final String textBegin;
@@ -648,6 +738,7 @@ public class PPUDumpParser {
         public Map<String, String> idNameMap;
         public Map<String, String> symidNameMap;
         Map<Integer, String> undefined = newUndef();
+        List<UsedReference> usedRefs = Collections.emptyList();
         private String indent = "";
 
         private static Map<Integer, String> newUndef() {
@@ -678,6 +769,14 @@ public class PPUDumpParser {
             this.removeChars = removeChars;
         }
 
+        static Section restore(String text, Map<String, String> idNameMap, Map<String, String> symidNameMap) {
+            Section res = new Section("/unit", "", "", "", "", 0);
+            res.sb = new StringBuilder(text);
+            res.idNameMap = idNameMap;
+            res.symidNameMap = symidNameMap;
+            return res;
+        }
+
         public boolean isError() {
             return (null == type) && (null == textBegin) && (null == textAfterName) && (null == beforeSubsec) && (null == textEnd);
         }
@@ -802,6 +901,13 @@ public class PPUDumpParser {
             return sb.toString();
         }
 
+        /**
+         * @return true if some references, e.g. to identifiers of used units, failed to resolve
+         */
+        boolean hasUnresolved() {
+            return sb.indexOf(UNRESOLVED) >= 0;
+        }
+
         public boolean isAnonimous() {
             return StringUtil.isEmpty(name) &&
                     (!StringUtil.isEmpty(getDataStr("id")) || !StringUtil.isEmpty(getDataStr("symid")));
@@ -1,86 +1,342 @@
 package com.siberika.idea.pascal.lang.lexer;
 
-import java.util.Scanner;
-import java.util.Set;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * Author: George Bakhtadze
  * Date: 25/08/2018
  *
- * condition ::= cond {op cond}
- * op        ::= or | and
- * cond      ::= [not] ("(" condition ")") | ("defined(" ident ")")
+ * Conditions are compiled once into expression trees which are cached by condition text in {@link DefineSymbols}.
+ * Define names are resolved to ids at compile time so evaluation against a {@link DefineSet} only tests bits.
+ *
+ * condition ::= simple [relop simple]
+ * simple    ::= term {(or | xor) term}
+ * term      ::= factor {and factor}
+ * factor    ::= not factor | "(" condition ")" | "defined(" ident ")" | "declared(" ident ")" | ident "(" ... ")"
+ *             | number | string | ident
+ * relop     ::= "=" | "<>" | "<" | ">" | "<=" | ">="
+ *
+ * Values the lexer can't know (macro values, declared identifiers, compiler options) are evaluated as unknown.
+ * Unknown values still let known operands determine the result, e.g. "defined(X) or declared(Y)" is true if X is defined.
+ * Otherwise condition with unknown result is considered false as well as condition with syntax error.
  */
 class ConditionParser {
-    private enum OPERATION {OR, AND}
-
-    private static final Pattern COND = Pattern.compile("(?i)defined\\((\\w+)\\)");
-    private static final Pattern COND_PREPARED = Pattern.compile("_\\[(\\w+)]");
-    private static final Pattern NOT = Pattern.compile("(?i)not");
-    private static final Pattern OP = Pattern.compile("(?i)or|and");
 
-    private static final Pattern PAREN_OPEN = Pattern.compile("\\(");
-    private static final Pattern PAREN_CLOSE = Pattern.compile("\\)");
+    // Result of an expression which can't be evaluated by the lexer
+    private static final Object UNKNOWN = new Object();
 
-    static boolean checkCondition(String condition, Set<String> defines) {
+    static boolean checkCondition(String condition, @NotNull DefineSymbols symbols, @NotNull DefineSet defines) {
         if (null == condition) {
             return false;
         }
-        ParserState state = new ParserState(COND.matcher(condition).replaceAll("_[$1]")
-                .replaceAll("\\(", " ( ").replaceAll("\\)", " ) "), defines);
-        Scanner scanner = new Scanner(state.condition);
-        return parseCondition(scanner, state);
+        Object res = symbols.getCondition(condition).eval(defines);
+        return Boolean.TRUE.equals(res);
     }
 
-    // condition ::= cond {op cond}
-    private static boolean parseCondition(Scanner scanner, ParserState state) {
-        boolean res = parseCond(scanner, state, true);
-        while (scanner.hasNext(OP)) {
-            OPERATION op = parseOp(scanner);
-            if (op == OPERATION.OR) {
-                boolean res2 = parseCond(scanner, state, !res);
-                res = res || res2;
-            } else {
-                boolean res2 = parseCond(scanner, state, res);
-                res = res && res2;
-            }
+    @NotNull
+    static Expr compile(@NotNull String condition, @NotNull DefineSymbols symbols) {
+        return new Compiler(condition, symbols).compile();
+    }
+
+    private enum Op {EQ, NE, LT, GT, LE, GE, AND, OR, XOR}
+
+    static abstract class Expr {
+        // Returns Boolean, Long, String or UNKNOWN
+        abstract Object eval(DefineSet defines);
+    }
+
+    private static class Const extends Expr {
+        private static final Const FALSE = new Const(Boolean.FALSE);
+        private static final Const TRUE = new Const(Boolean.TRUE);
+        private static final Const UNKNOWN_VALUE = new Const(UNKNOWN);
+
+        private final Object value;
+
+        private Const(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object eval(DefineSet defines) {
+            return value;
         }
-        return res;
     }
 
-    // cond ::= [not] ("(" condition ")") | ("defined(" ident ")")
-    private static boolean parseCond(Scanner scanner, ParserState state, boolean needEval) {
-        boolean neg = scanner.hasNext(NOT) && (scanner.next(NOT) != null);
-        if (scanner.hasNext(PAREN_OPEN) && (scanner.next(PAREN_OPEN) != null)) {
-            boolean result = parseCondition(scanner, state);
-            if (scanner.hasNext(PAREN_CLOSE) && (scanner.next(PAREN_CLOSE) != null)) {
-                return result ^ neg;
-            } else {
-                return false;
-            }
+    private static class Defined extends Expr {
+        private final int id;
+
+        private Defined(int id) {
+            this.id = id;
+        }
+
+        @Override
+        Object eval(DefineSet defines) {
+            return defines.contains(id);
         }
-        String next = scanner.hasNext(COND_PREPARED) ? scanner.next(COND_PREPARED) : null;
-        if ((next != null) && needEval) {
-            MatchResult mr = scanner.match();
-            return state.defines.contains(mr.group(1).toUpperCase()) ^ neg;
+    }
+
+    private static class Not extends Expr {
+        private final Expr expr;
+
+        private Not(Expr expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        Object eval(DefineSet defines) {
+            Object value = expr.eval(defines);
+            return value instanceof Boolean ? !(Boolean) value : UNKNOWN;
         }
-        return false;
     }
 
-    private static OPERATION parseOp(Scanner scanner) {
-        String next = scanner.next(OP);
-        return OPERATION.valueOf(next.toUpperCase());
+    private static class Binary extends Expr {
+        private final Op op;
+        private final Expr left;
+        private final Expr right;
+
+        private Binary(Op op, Expr left, Expr right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(DefineSet defines) {
+            Object l = left.eval(defines);
+            switch (op) {
+                case AND:
+                    return Boolean.FALSE.equals(l) ? Boolean.FALSE : logical(l, right.eval(defines));
+                case OR:
+                    return Boolean.TRUE.equals(l) ? Boolean.TRUE : logical(l, right.eval(defines));
+                case XOR:
+                    return logical(l, right.eval(defines));
+                default:
+                    return compare(l, right.eval(defines));
+            }
+        }
+
+        // Left value is already known to not determine the result of AND/OR
+        private Object logical(Object l, Object r) {
+            if (!(l instanceof Boolean) || !(r instanceof Boolean)) {
+                if ((op == Op.AND) && Boolean.FALSE.equals(r)) {
+                    return Boolean.FALSE;
+                }
+                return (op == Op.OR) && Boolean.TRUE.equals(r) ? Boolean.TRUE : UNKNOWN;
+            }
+            return op == Op.XOR ? (Boolean) l ^ (Boolean) r : r;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object compare(Object l, Object r) {
+            if ((l == UNKNOWN) || (r == UNKNOWN) || (l.getClass() != r.getClass())) {
+                return UNKNOWN;
+            }
+            int cmp = ((Comparable<Object>) l).compareTo(r);
+            switch (op) {
+                case EQ: return cmp == 0;
+                case NE: return cmp != 0;
+                case LT: return cmp < 0;
+                case GT: return cmp > 0;
+                case LE: return cmp <= 0;
+                default: return cmp >= 0;
+            }
+        }
     }
 
-    private static class ParserState {
-        private final String condition;
-        private final Set<String> defines;
+    // Recursive descent compiler. Sets error flag instead of throwing on a syntax error.
+    private static class Compiler {
+        private final String text;
+        private final DefineSymbols symbols;
+        private int pos;
+        private boolean error;
+
+        private Compiler(String text, DefineSymbols symbols) {
+            this.text = text;
+            this.symbols = symbols;
+        }
+
+        private Expr compile() {
+            Expr res = parseCondition();
+            skipWhitespace();
+            return error || (pos < text.length()) ? Const.FALSE : res;
+        }
+
+        private Expr parseCondition() {
+            Expr res = parseSimple();
+            Op op = parseRelOp();
+            return op != null ? new Binary(op, res, parseSimple()) : res;
+        }
+
+        private Expr parseSimple() {
+            Expr res = parseTerm();
+            while (!error) {
+                if (nextWord("or")) {
+                    res = new Binary(Op.OR, res, parseTerm());
+                } else if (nextWord("xor")) {
+                    res = new Binary(Op.XOR, res, parseTerm());
+                } else {
+                    break;
+                }
+            }
+            return res;
+        }
+
+        private Expr parseTerm() {
+            Expr res = parseFactor();
+            while (!error && nextWord("and")) {
+                res = new Binary(Op.AND, res, parseFactor());
+            }
+            return res;
+        }
+
+        private Expr parseFactor() {
+            if (nextWord("not")) {
+                return new Not(parseFactor());
+            }
+            if (nextChar('(')) {
+                Expr res = parseCondition();
+                expect(')');
+                return res;
+            }
+            skipWhitespace();
+            if (pos >= text.length()) {
+                return fail();
+            }
+            char c = text.charAt(pos);
+            if (Character.isDigit(c) || (c == '$')) {
+                return parseNumber();
+            } else if (c == '\'') {
+                return parseString();
+            }
+            String ident = parseIdent();
+            if (null == ident) {
+                return fail();
+            }
+            if (nextChar('(')) {
+                return parseFunction(ident);
+            }
+            if ("TRUE".equalsIgnoreCase(ident)) {
+                return Const.TRUE;
+            } else if ("FALSE".equalsIgnoreCase(ident)) {
+                return Const.FALSE;
+            }
+            return Const.UNKNOWN_VALUE;
+        }
+
+        // Opening parenthesis is already consumed
+        private Expr parseFunction(String name) {
+            if ("DEFINED".equalsIgnoreCase(name)) {
+                String ident = parseIdent();
+                expect(')');
+                return ident != null ? new Defined(symbols.intern(ident.toUpperCase())) : fail();
+            }
+            // declared(), option(), sizeof() etc. depend on information not available to the lexer
+            int level = 1;
+            while ((pos < text.length()) && (level > 0)) {
+                char c = text.charAt(pos++);
+                level += c == '(' ? 1 : (c == ')' ? -1 : 0);
+            }
+            return level > 0 ? fail() : Const.UNKNOWN_VALUE;
+        }
+
+        private Expr parseNumber() {
+            int radix = 10;
+            if (text.charAt(pos) == '$') {
+                radix = 16;
+                pos++;
+            }
+            int start = pos;
+            while ((pos < text.length()) && (Character.digit(text.charAt(pos), radix) >= 0)) {
+                pos++;
+            }
+            if ((pos == start) || (pos - start > 15)) {
+                return fail();
+            }
+            return new Const(Long.parseLong(text.substring(start, pos), radix));
+        }
+
+        private Expr parseString() {
+            StringBuilder sb = new StringBuilder();
+            pos++;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '\'') {
+                    if ((pos < text.length()) && (text.charAt(pos) == '\'')) {
+                        pos++;
+                    } else {
+                        return new Const(sb.toString());
+                    }
+                }
+                sb.append(c);
+            }
+            return fail();
+        }
+
+        private Op parseRelOp() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                return null;
+            }
+            char c = text.charAt(pos);
+            char c2 = pos + 1 < text.length() ? text.charAt(pos + 1) : 0;
+            if (c == '=') {
+                pos++;
+                return Op.EQ;
+            } else if (c == '<') {
+                pos += (c2 == '>') || (c2 == '=') ? 2 : 1;
+                return c2 == '>' ? Op.NE : (c2 == '=' ? Op.LE : Op.LT);
+            } else if (c == '>') {
+                pos += c2 == '=' ? 2 : 1;
+                return c2 == '=' ? Op.GE : Op.GT;
+            }
+            return null;
+        }
+
+        private String parseIdent() {
+            skipWhitespace();
+            int start = pos;
+            while ((pos < text.length()) && (Character.isLetterOrDigit(text.charAt(pos)) || (text.charAt(pos) == '_'))) {
+                pos++;
+            }
+            return (pos > start) && !Character.isDigit(text.charAt(start)) ? text.substring(start, pos) : null;
+        }
+
+        // Consumes the keyword if it's next in text
+        private boolean nextWord(String word) {
+            skipWhitespace();
+            int end = pos + word.length();
+            if (text.regionMatches(true, pos, word, 0, word.length())
+                    && ((end >= text.length()) || !(Character.isLetterOrDigit(text.charAt(end)) || (text.charAt(end) == '_')))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean nextChar(char c) {
+            skipWhitespace();
+            if ((pos < text.length()) && (text.charAt(pos) == c)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
 
-        private ParserState(String condition, Set<String> defines) {
-            this.condition = condition;
-            this.defines = defines;
+        private void expect(char c) {
+            if (!nextChar(c)) {
+                error = true;
+            }
+        }
+
+        private Expr fail() {
+            error = true;
+            return Const.FALSE;
+        }
+
+        private void skipWhitespace() {
+            while ((pos < text.length()) && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
         }
     }
 }
@@ -0,0 +1,99 @@
+package com.siberika.idea.pascal.lang.lexer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Conditional compilation state snapshots ordered by offset of directives which changed the state.
+ * Each snapshot is complete so the state for any offset is restored with a binary search without replaying preceding directives.
+ */
+class ConditionalSnapshots {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    // (ifValueStack(16), curLevel(8), inactiveLevel(8))
+    private int[] levels = new int[INITIAL_CAPACITY];
+    // Define sets are never modified after a snapshot is taken so snapshots without define changes share the same set
+    private DefineSet[] defines = new DefineSet[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Adds snapshot of state after directive at the given offset. Offsets should not decrease.
+     */
+    void add(int offset, int level, @NotNull DefineSet defineSet) {
+        if ((size > 0) && (offsets[size - 1] >= offset)) {
+            size--;
+        }
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            defines = Arrays.copyOf(defines, capacity);
+        }
+        offsets[size] = offset;
+        levels[size] = level;
+        defines[size] = defineSet;
+        size++;
+    }
+
+    /**
+     * Returns index of the last snapshot taken at offset less than the given one or -1 if there is no such snapshot
+     */
+    int indexBefore(int offset) {
+        int index = Arrays.binarySearch(offsets, 0, size, offset);
+        return (index >= 0 ? index : -index - 1) - 1;
+    }
+
+    /**
+     * Removes all snapshots starting from the given index
+     */
+    void truncate(int newSize) {
+        if (newSize < size) {
+            Arrays.fill(defines, newSize, size, null);
+            size = newSize;
+        }
+    }
+
+    /**
+     * Appends snapshots of another instance which offsets shifted by the given value are not less than the given offset
+     */
+    void appendShifted(@NotNull ConditionalSnapshots other, int shift, int fromOffset) {
+        for (int i = other.indexBefore(fromOffset - shift) + 1; i < other.size; i++) {
+            add(other.offsets[i] + shift, other.levels[i], other.defines[i]);
+        }
+    }
+
+    /**
+     * Returns True if the snapshot at the index is equal to the snapshot of another instance. Index -1 denotes initial state.
+     */
+    boolean isSame(int index, @NotNull ConditionalSnapshots other, int otherIndex) {
+        if ((index < 0) || (otherIndex < 0)) {
+            return index == otherIndex;
+        }
+        return (levels[index] == other.levels[otherIndex]) && defines[index].equals(other.defines[otherIndex]);
+    }
+
+    ConditionalSnapshots copy() {
+        ConditionalSnapshots res = new ConditionalSnapshots();
+        int capacity = Math.max(size, INITIAL_CAPACITY);
+        res.offsets = Arrays.copyOf(offsets, capacity);
+        res.levels = Arrays.copyOf(levels, capacity);
+        res.defines = Arrays.copyOf(defines, capacity);
+        res.size = size;
+        return res;
+    }
+
+    int getLevel(int index) {
+        return levels[index];
+    }
+
+    DefineSet getDefines(int index) {
+        return defines[index];
+    }
+
+    int size() {
+        return size;
+    }
+}
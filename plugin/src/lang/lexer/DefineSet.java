@@ -0,0 +1,107 @@
+package com.siberika.idea.pascal.lang.lexer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of defines represented as a bitset of define ids from a {@link DefineSymbols} table.
+ * Modification methods return a new set so instances can be shared between lexer state snapshots.
+ */
+final class DefineSet {
+
+    static final DefineSet EMPTY = new DefineSet(new long[0]);
+
+    private final long[] words;
+
+    private DefineSet(long[] words) {
+        this.words = words;
+    }
+
+    boolean contains(int id) {
+        int index = id >> 6;
+        return (id >= 0) && (index < words.length) && ((words[index] & (1L << id)) != 0);
+    }
+
+    @NotNull
+    DefineSet with(int id) {
+        if (contains(id)) {
+            return this;
+        }
+        int index = id >> 6;
+        long[] res = Arrays.copyOf(words, Math.max(words.length, index + 1));
+        res[index] |= 1L << id;
+        return new DefineSet(res);
+    }
+
+    @NotNull
+    DefineSet without(int id) {
+        if (!contains(id)) {
+            return this;
+        }
+        long[] res = words.clone();
+        res[id >> 6] &= ~(1L << id);
+        return new DefineSet(res);
+    }
+
+    @NotNull
+    DefineSet union(@NotNull DefineSet other) {
+        if (other.isSubsetOf(this)) {
+            return this;
+        }
+        long[] res = Arrays.copyOf(words, Math.max(words.length, other.words.length));
+        for (int i = 0; i < other.words.length; i++) {
+            res[i] |= other.words[i];
+        }
+        return new DefineSet(res);
+    }
+
+    private boolean isSubsetOf(DefineSet other) {
+        for (int i = 0; i < words.length; i++) {
+            long word = i < other.words.length ? other.words[i] : 0;
+            if ((words[i] & ~word) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Ids of defines in the set in ascending order
+    int[] getIds() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        int[] res = new int[count];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                res[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DefineSet)) {
+            return false;
+        }
+        DefineSet other = (DefineSet) o;
+        return isSubsetOf(other) && other.isSubsetOf(this);
+    }
+
+    @Override
+    public int hashCode() {
+        int len = words.length;
+        while ((len > 0) && (words[len - 1] == 0)) {
+            len--;
+        }
+        return Arrays.hashCode(Arrays.copyOf(words, len));
+    }
+}
@@ -0,0 +1,121 @@
+package com.siberika.idea.pascal.lang.lexer;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.siberika.idea.pascal.sdk.BasePascalSdkType;
+import com.siberika.idea.pascal.sdk.Define;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of define names interned into ids used as bit indices in {@link DefineSet}.
+ * There is one table per set of SDK defines. Names defined in sources are added on first use.
+ * Names are expected in upper case.
+ */
+class DefineSymbols {
+
+    private static final int MAX_CACHED_CONDITIONS = 2000;
+
+    // Keyed by instance of SDK defines map which is cached per SDK and version
+    private static final LoadingCache<Map<String, Define>, DefineSymbols> SDK_SYMBOLS = CacheBuilder.newBuilder().weakKeys()
+            .build(new CacheLoader<Map<String, Define>, DefineSymbols>() {
+                @Override
+                public DefineSymbols load(@NotNull Map<String, Define> sdkDefines) {
+                    return new DefineSymbols(sdkDefines.keySet());
+                }
+            });
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private final List<String> names = new ArrayList<String>();
+    private final DefineSet initialDefines;
+    private final int disableConditionalsId;
+
+    // Compiled conditions reference define ids so they are cached per table
+    private final LoadingCache<String, ConditionParser.Expr> conditions = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CONDITIONS)
+            .build(new CacheLoader<String, ConditionParser.Expr>() {
+                @Override
+                public ConditionParser.Expr load(@NotNull String condition) {
+                    return ConditionParser.compile(condition, DefineSymbols.this);
+                }
+            });
+
+    DefineSymbols(@NotNull Collection<String> initialNames) {
+        initialDefines = toDefineSet(initialNames);
+        disableConditionalsId = intern(BasePascalSdkType.DEFINE_IDE_DISABLE_CONDITIONALS_);
+    }
+
+    @NotNull
+    static DefineSymbols forSdkDefines(@NotNull Map<String, Define> sdkDefines) {
+        return SDK_SYMBOLS.getUnchecked(sdkDefines);
+    }
+
+    /**
+     * Returns set of defines the table was created with, i.e. SDK defines
+     */
+    @NotNull
+    DefineSet getInitialDefines() {
+        return initialDefines;
+    }
+
+    int getDisableConditionalsId() {
+        return disableConditionalsId;
+    }
+
+    /**
+     * Returns id of the name or -1 if the name is not in the table
+     */
+    int getId(@NotNull String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    int intern(@NotNull String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (names) {
+            id = ids.get(name);
+            if (null == id) {
+                id = names.size();
+                names.add(name);
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    @NotNull
+    DefineSet toDefineSet(@NotNull Collection<String> defineNames) {
+        DefineSet res = DefineSet.EMPTY;
+        for (String name : defineNames) {
+            res = res.with(intern(name));
+        }
+        return res;
+    }
+
+    @NotNull
+    Set<String> toNames(@NotNull DefineSet defines) {
+        Set<String> res = new LinkedHashSet<String>();
+        synchronized (names) {
+            for (int id : defines.getIds()) {
+                res.add(names.get(id));
+            }
+        }
+        return res;
+    }
+
+    @NotNull
+    ConditionParser.Expr getCondition(@NotNull String condition) {
+        return conditions.getUnchecked(condition);
+    }
+}
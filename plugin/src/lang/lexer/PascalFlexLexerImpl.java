@@ -13,11 +13,9 @@ import com.intellij.openapi.project.ProjectLocator;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.AsyncResult;
-import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IElementType;
-import com.intellij.util.SmartList;
 import com.intellij.util.containers.HashMap;
 import com.intellij.util.io.BaseInputStreamReader;
 import com.siberika.idea.pascal.lang.psi.PasTypes;
@@ -30,8 +28,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -43,8 +40,8 @@ import java.util.regex.Matcher;
 public class PascalFlexLexerImpl extends _PascalLexer {
 
     private static final Logger LOG = Logger.getInstance(PascalFlexLexerImpl.class);
-    // Files of size less than this will be re-lexed on edit to correctly highlight potentially affected conditional blocks of code
-    private static final int DEFINE_CORRECT_HIGHLIGHT_THRESHOLD = 120000;
+    // Added to lexer state when conditional compilation state differs from the one at the same position during previous lexing
+    private static final int CONDITIONAL_STATE_CHANGED = 10;
 
     // current conditional compilation level
     private int curLevel = 0;
@@ -53,13 +50,21 @@ public class PascalFlexLexerImpl extends _PascalLexer {
     // IF with True condition flag
     private int conditionStack = 0;
 
-    // (Offset(32), ifValueStack(16), curLevel(8), inactiveLevel(8)) - offset, stack of IF condition values, current conditional compilation level, level on which inactive code branch started
-    private List<Long> levels = new SmartList<Long>();
-    // (Offset, defineName). Negative offset - undefine.
-    private List<Pair<Integer, String>> defines = new SmartList<Pair<Integer, String>>();
-
-    private Set<String> actualDefines;
-    // TODO: replace with defines
+    // Conditional compilation state after each directive which changed it
+    private final ConditionalSnapshots snapshots = new ConditionalSnapshots();
+    // Snapshots of previous lexing, shift of their offsets caused by the edit and offset lexing restarted from
+    private ConditionalSnapshots previousSnapshots;
+    private int previousShift;
+    private int restartOffset;
+    private int bufferEnd = -1;
+
+    // Defines of SDK the set of active defines starts with
+    private Map<String, Define> sdkDefines;
+    // Define name ids of the SDK
+    private DefineSymbols symbols;
+    // Active defines. The set is immutable and can be shared with snapshots.
+    private DefineSet actualDefines;
+    // Created from SDK defines on first define within the file
     private Map<String, Define> allDefines;
 
     private VirtualFile virtualFile;
@@ -91,49 +96,41 @@ public class PascalFlexLexerImpl extends _PascalLexer {
 
     @Override
     public void reset(CharSequence buffer, int start, int end, int initialState) {
+        int lexedEnd = getTokenEnd();
         super.reset(buffer, start, end, initialState);
 //        System.out.println(String.format("===reset: [%d - %d], %d", start, end, initialState));
 //        super.reset(buffer, 0, end, YYINITIAL);
-        levels = levels.subList(0, getLevelIndex(start));
-        if (levels.isEmpty()) {
+        boolean valid = initDefines(getProject(), getVirtualFile());
+        if (incremental) {
+            keepPrevious(start, end, lexedEnd, valid);
+        }
+        // Directives starting at or after the start offset will be lexed again
+        int index = valid ? snapshots.indexBefore(start) : -1;
+        snapshots.truncate(index + 1);
+        if (index < 0) {
             curLevel = 0;
             inactiveLevel = 0;
             conditionStack = 0;
+            actualDefines = symbols.getInitialDefines();
         } else {
-            int value = levels.get(levels.size() - 1).intValue();
+            int value = snapshots.getLevel(index);
             conditionStack = (value >> 16) & 0xFFFF;
             curLevel = (value >> 8) & 0xFF;
             inactiveLevel = value & 0xFF;
+            actualDefines = snapshots.getDefines(index);
         }
-        actualDefines = null;
         allDefines = null;
-        actualDefines = getActualDefines();
-        defines = adjustDefines(actualDefines, defines, start);
-    }
-
-    private List<Pair<Integer, String>> adjustDefines(Set<String> defines, List<Pair<Integer, String>> events, int offset) {
-        for (int i = 0; i < events.size(); i++) {
-            int ofs = events.get(i).getFirst();
-            if (Math.abs(ofs) >= offset) {
-                return events.subList(0, i);
-            }
-            if (ofs >= 0) {
-                defines.add(events.get(i).getSecond());
-            } else {
-                defines.remove(events.get(i).getSecond());
-            }
-        }
-        return events;
     }
 
-    // Index of actual level change for offset. 0 - no changes.
-    private int getLevelIndex(int start) {
-        for (int i = 0; i < levels.size(); i++) {
-            if (levels.get(i) >> 32 > start) {
-                return i;
-            }
+    // Highlighter stops lexing when lexer state gets equal to the previous one so snapshots after that point are still valid
+    private void keepPrevious(int start, int end, int lexedEnd, boolean valid) {
+        if (valid && (previousSnapshots != null)) {
+            snapshots.appendShifted(previousSnapshots, previousShift, Math.max(lexedEnd, restartOffset));
         }
-        return 0;
+        previousSnapshots = valid && (bufferEnd >= 0) ? snapshots.copy() : null;
+        previousShift = end - bufferEnd;
+        restartOffset = start;
+        bufferEnd = end;
     }
 
     private DataContext getDataContext() {
@@ -164,17 +161,33 @@ public class PascalFlexLexerImpl extends _PascalLexer {
         return null;
     }
 
-    private Set<String> getActualDefines() {
-        if ((null == actualDefines) || (actualDefines.isEmpty())) {
+    private DefineSet getActualDefines() {
+        if (null == actualDefines) {
             initDefines(getProject(), getVirtualFile());
+            actualDefines = symbols.getInitialDefines();
         }
         return actualDefines;
     }
 
+    // Names of active defines
+    private Set<String> getActualDefineNames() {
+        return symbols.toNames(getActualDefines());
+    }
+
     public Map<String, Define> getAllDefines() {
-        if ((null == allDefines) || (allDefines.isEmpty())) {
+        if (allDefines != null) {
+            return allDefines;
+        }
+        if (null == sdkDefines) {
             initDefines(getProject(), getVirtualFile());
         }
+        return sdkDefines;
+    }
+
+    private Map<String, Define> getAllDefinesForUpdate() {
+        if (null == allDefines) {
+            allDefines = new HashMap<String, Define>(getAllDefines());
+        }
         return allDefines;
     }
 
@@ -213,9 +226,9 @@ public class PascalFlexLexerImpl extends _PascalLexer {
         String name = extractDefineName(sequence);
         if (StringUtils.isNotEmpty(name)) {
             String key = name.toUpperCase();
-            getActualDefines().add(key);
-            defines.add(Pair.create(pos, key));
-            Map<String, Define> defs = allDefines;
+            actualDefines = getActualDefines().with(symbols.intern(key));
+            pushLevels(pos);
+            Map<String, Define> defs = getAllDefinesForUpdate();
             if (!BasePascalSdkType.DEFINE_IDE_PARSER.equals(key) || !defs.containsKey(key)) {
                 defs.put(key, new Define(name, virtualFile, pos));
             }
@@ -228,25 +241,29 @@ public class PascalFlexLexerImpl extends _PascalLexer {
         String name = extractDefineName(sequence);
         if (StringUtils.isNotEmpty(name)) {
             String key = name.toUpperCase();
-            getActualDefines().remove(key);
-            defines.add(Pair.create(-pos, key));
-            allDefines.put(key, new Define(name, virtualFile, pos));
+            actualDefines = getActualDefines().without(symbols.getId(key));
+            pushLevels(pos);
+            getAllDefinesForUpdate().put(key, new Define(name, virtualFile, pos));
             //if (incremental)System.out.println("Undefine: " + name);
         }
     }
 
-    synchronized private void initDefines(Project project, VirtualFile virtualFile) {
-        actualDefines = new HashSet<String>();
-        allDefines = new HashMap<String, Define>();
+    // Returns False if SDK defines changed since last call which makes existing snapshots invalid
+    synchronized private boolean initDefines(Project project, VirtualFile virtualFile) {
+        Map<String, Define> defines = Collections.emptyMap();
         if ((project != null)) {
             final Sdk sdk = com.siberika.idea.pascal.util.ModuleUtil.getSdk(project, virtualFile);
             if ((sdk != null) && (sdk.getVersionString() != null)) {
-                allDefines.putAll(BasePascalSdkType.getDefaultDefines(sdk, sdk.getVersionString()));
-            }
-            for (Map.Entry<String, Define> entry : allDefines.entrySet()) {
-                actualDefines.add(entry.getKey());
+                defines = BasePascalSdkType.getDefaultDefines(sdk, sdk.getVersionString());
             }
         }
+        // SDK defines are cached so the same instance is returned until SDK is changed
+        if ((defines == sdkDefines) && (symbols != null)) {
+            return true;
+        }
+        sdkDefines = defines;
+        symbols = DefineSymbols.forSdkDefines(defines);
+        return false;
     }
 
     private IElementType doHandleIfDef(int pos, CharSequence sequence, boolean negate) {
@@ -256,7 +273,7 @@ public class PascalFlexLexerImpl extends _PascalLexer {
         String name = extractDefineName(sequence);
         curLevel++;
         if (!isInactive()) {
-            if (StringUtils.isNotEmpty(name) && (!getActualDefines().contains(name.toUpperCase()) ^ negate)) {
+            if (StringUtils.isNotEmpty(name) && (!getActualDefines().contains(symbols.getId(name.toUpperCase())) ^ negate)) {
                 inactiveLevel = curLevel;
                 pushCondition(false);
                 yybegin(INACTIVE_BRANCH);
@@ -277,7 +294,8 @@ public class PascalFlexLexerImpl extends _PascalLexer {
         curLevel++;
         String condition = extractCondition(sequence);
         if (!isInactive()) {
-            if (StringUtils.isNotEmpty(condition) && (!ConditionParser.checkCondition(condition, getActualDefines()))) {
+            DefineSet defines = getActualDefines();
+            if (StringUtils.isNotEmpty(condition) && (!ConditionParser.checkCondition(condition, symbols, defines))) {
                 inactiveLevel = curLevel;
                 pushCondition(false);
                 yybegin(INACTIVE_BRANCH);
@@ -315,7 +333,8 @@ public class PascalFlexLexerImpl extends _PascalLexer {
             }
         } else {
             String condition = extractCondition(sequence);
-            if (isInactive() && StringUtils.isNotEmpty(condition) && ConditionParser.checkCondition(condition, getActualDefines())) {
+            DefineSet defines = getActualDefines();
+            if (isInactive() && StringUtils.isNotEmpty(condition) && ConditionParser.checkCondition(condition, symbols, defines)) {
                 if (curLevel == inactiveLevel) {
                     yybegin(YYINITIAL);
                     pushCondition(true);
@@ -387,12 +406,10 @@ public class PascalFlexLexerImpl extends _PascalLexer {
             VirtualFile file = com.siberika.idea.pascal.util.ModuleUtil.getIncludedFile(project, virtualFile, name);
             PascalFlexLexerImpl lexer = !ObjectUtils.equals(virtualFile, file) ? processFile(project, file) : null;
             if (lexer != null) {
-                getActualDefines().addAll(lexer.getActualDefines());
-                allDefines.putAll(lexer.getAllDefines());
-                for (Pair<Integer, String> define : lexer.defines) {
-                    defines.add(Pair.create(define.first > 0 ? pos : -pos, define.second));
-                }
-                //TODO: put in levels
+                actualDefines = getActualDefines().union(lexer.symbols == symbols ? lexer.getActualDefines()
+                        : symbols.toDefineSet(lexer.getActualDefineNames()));
+                getAllDefinesForUpdate().putAll(lexer.getAllDefines());
+                pushLevels(pos);
             } else {
                 LOG.info(String.format("WARNING: Include %s referenced from %s not found", name, getVFName(virtualFile)));
             }
@@ -413,11 +430,11 @@ public class PascalFlexLexerImpl extends _PascalLexer {
     }
 
     private boolean isConditionalsDisabled() {
-        return getActualDefines().contains(BasePascalSdkType.DEFINE_IDE_DISABLE_CONDITIONALS_);
+        return getActualDefines().contains(symbols.getDisableConditionalsId());
     }
 
     private void pushLevels(int pos) {
-        levels.add((long) (pos) << 32 + (conditionStack & 0xFF) << 16 + (curLevel << 8) + inactiveLevel);
+        snapshots.add(pos, ((conditionStack & 0xFFFF) << 16) | ((curLevel & 0xFF) << 8) | (inactiveLevel & 0xFF), getActualDefines());
     }
 
     // Process the file and return the new instance of lexer which processed it
@@ -481,11 +498,20 @@ public class PascalFlexLexerImpl extends _PascalLexer {
         return StrUtil.getIncludeName(sequence.toString());
     }
 
-    // Returns state modified if lexer state can be modified by a conditional define declared in the text
+    // Returns state modified if conditional compilation state differs from the one at the same position during previous lexing.
+    // Highlighter restarts only from unmodified states and re-lexes until the states get equal again so only affected
+    // conditional blocks are re-lexed on edit while conditional state at restart offset is restored from a snapshot.
     public int getStateWithConditionals() {
-        if ((yylength() > 0) && (virtualFile != null) && (virtualFile.getLength() < DEFINE_CORRECT_HIGHLIGHT_THRESHOLD)) {
-            return yystate() + (levels.size() + defines.size()) * 10;
+        if ((yylength() > 0) && isConditionalStateChanged(getTokenStart())) {
+            return yystate() + CONDITIONAL_STATE_CHANGED;
         }
         return yystate();
     }
+
+    private boolean isConditionalStateChanged(int offset) {
+        if ((null == previousSnapshots) || (offset < restartOffset)) {
+            return false;
+        }
+        return !snapshots.isSame(snapshots.indexBefore(offset + 1), previousSnapshots, previousSnapshots.indexBefore(offset - previousShift + 1));
+    }
 }
@@ -209,6 +209,17 @@ public class NamespaceRec {
         return false;
     }
 
+    /**
+     * Returns key which identifies resolve state of the record regardless of its position in file
+     */
+    public String getResolveKey() {
+        StringBuilder sb = new StringBuilder();
+        for (String level : levels) {
+            sb.append(level.toUpperCase()).append('.');
+        }
+        return sb.append(current).append('/').append(target).append(nested ? 'N' : '-').append(ignoreVisibility ? 'I' : '-').toString();
+    }
+
     @Override
     public String toString() {
         return String.format("%s (%d/%d) %s for: %s", Arrays.toString(levels), current, target, nested ? "nested" : "", parentIdent);
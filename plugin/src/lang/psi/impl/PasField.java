@@ -16,7 +16,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
 * Author: George Bakhtadze
@@ -96,11 +96,12 @@ public class PasField {
     @Nullable
     public final PsiElement target;
 
-    private ValueType valueType;
+    private static final AtomicReferenceFieldUpdater<PasField, ValueType> VALUE_TYPE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PasField.class, ValueType.class, "valueType");
 
-    private final int cachedHash;
+    private volatile ValueType valueType;
 
-    private ReentrantLock typeLock = new ReentrantLock();
+    private final int cachedHash;
 
     public PasField(@Nullable PasEntityScope owner, @Nullable PascalNamedElement element, String name, FieldType fieldType,
                     @NotNull Visibility visibility, @Nullable PsiElement target, ValueType valueType) {
@@ -187,15 +188,24 @@ public class PasField {
     }
 
     public boolean isTypeResolved() {
+        return isResolved(valueType);
+    }
+
+    /**
+     * @return true if the value type obtained from getValueType() is already resolved
+     */
+    public static boolean isResolved(ValueType valueType) {
         return (valueType != NOT_INITIALIZED);
     }
 
     public boolean isInteger() {
-        return (getValueType() != null) && (valueType.kind == Kind.INTEGER);
+        ValueType type = getValueType();
+        return (type != null) && (type.kind == Kind.INTEGER);
     }
 
     public boolean isFloat() {
-        return (getValueType() != null) && (valueType.kind == Kind.FLOAT);
+        ValueType type = getValueType();
+        return (type != null) && (type.kind == Kind.FLOAT);
     }
 
     public boolean isNumeric() {
@@ -210,6 +220,16 @@ public class PasField {
         this.valueType = valueType;
     }
 
+    /**
+     * Publishes value type if it's not resolved yet. Resolving is idempotent so concurrent callers may compute it simultaneously and the first one wins.
+     * @param valueType  resolved value type
+     * @return           value type of the field after the call
+     */
+    public ValueType publishValueType(ValueType valueType) {
+        VALUE_TYPE_UPDATER.compareAndSet(this, NOT_INITIALIZED, valueType);
+        return this.valueType;
+    }
+
     public static ValueType getValueType(String name) {
         Kind kind = getKindByName(name);
         if (null == kind) {
@@ -301,8 +321,4 @@ public class PasField {
         }
 
     }
-
-    public ReentrantLock getTypeLock() {
-        return typeLock;
-    }
 }
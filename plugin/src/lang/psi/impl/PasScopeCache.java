@@ -0,0 +1,240 @@
+package com.siberika.idea.pascal.lang.psi.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiTreeChangeAdapter;
+import com.intellij.psi.PsiTreeChangeEvent;
+import com.siberika.idea.pascal.lang.psi.PasEntityScope;
+import com.siberika.idea.pascal.lang.parser.PascalFile;
+import com.siberika.idea.pascal.util.PsiUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+public class PasScopeCache<T extends PasScopeImpl.Cached> {
+
+    private static final Logger LOG = Logger.getInstance(PasScopeCache.class);
+
+    // Total number of members per cache per project
+    private static final long MAX_WEIGHT_DEFAULT = 1000000;
+
+    private static final List<PasScopeCache<?>> CACHES = new CopyOnWriteArrayList<PasScopeCache<?>>();
+    private static final Set<Project> LISTENED_PROJECTS = Collections.newSetFromMap(new WeakHashMap<Project, Boolean>());
+
+    private final String name;
+    private final long maxWeight;
+    private final Cache<Project, ProjectCache<T>> projectCaches = CacheBuilder.newBuilder().weakKeys().build();
+
+    PasScopeCache(@NotNull String name) {
+        this(name, MAX_WEIGHT_DEFAULT);
+    }
+
+    /**
+     * Creates cache of scope members isolated per project
+     * @param name       name used in statistics
+     * @param maxWeight  maximum total weight of entries per project. Least recently used entries are evicted when exceeded.
+     */
+    PasScopeCache(@NotNull String name, long maxWeight) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+        CACHES.add(this);
+    }
+
+    /**
+     * Returns cached value for the scope or builds it with the given builder
+     */
+    T get(@NotNull PasEntityScope scope, @NotNull final Callable<? extends T> builder) throws ExecutionException {
+        final ProjectCache<T> pc = getProjectCache(scope.getProject());
+        final String key = scope.getKey();
+        final String file = PsiUtil.getContainingFilePath(scope);
+        return pc.cache.get(key, new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T res = builder.call();
+                if (res != null) {
+                    res.file = file;
+                    pc.getFileKeys(file).add(key);
+                }
+                return res;
+            }
+        });
+    }
+
+    @Nullable
+    T getIfPresent(@NotNull PasEntityScope scope) {
+        ProjectCache<T> pc = projectCaches.getIfPresent(scope.getProject());
+        return pc != null ? pc.cache.getIfPresent(scope.getKey()) : null;
+    }
+
+    void invalidate(@NotNull PasEntityScope scope) {
+        ProjectCache<T> pc = projectCaches.getIfPresent(scope.getProject());
+        if (pc != null) {
+            pc.cache.invalidate(scope.getKey());
+        }
+    }
+
+    /**
+     * Invalidates entries with the given key in all projects
+     */
+    void invalidate(@NotNull String key) {
+        for (ProjectCache<T> pc : projectCaches.asMap().values()) {
+            pc.cache.invalidate(key);
+        }
+    }
+
+    @Nullable
+    CacheStats getStats(@NotNull Project project) {
+        ProjectCache<T> pc = projectCaches.getIfPresent(project);
+        return pc != null ? pc.cache.stats() : null;
+    }
+
+    /**
+     * Returns hit/miss/eviction statistics of all scope caches of the project
+     */
+    @NotNull
+    public static Map<String, CacheStats> getAllStats(@NotNull Project project) {
+        Map<String, CacheStats> res = new LinkedHashMap<String, CacheStats>();
+        for (PasScopeCache<?> cache : CACHES) {
+            CacheStats stats = cache.getStats(project);
+            if (stats != null) {
+                res.put(cache.name, stats);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Invalidates all entries built for scopes of the given file in all scope caches of the project
+     */
+    static void invalidateFile(@NotNull Project project, @NotNull String file) {
+        for (PasScopeCache<?> cache : CACHES) {
+            cache.invalidateFileEntries(project, file);
+        }
+    }
+
+    private void invalidateFileEntries(Project project, String file) {
+        ProjectCache<T> pc = projectCaches.getIfPresent(project);
+        Set<String> keys = pc != null ? pc.fileKeys.remove(file) : null;
+        if (keys != null) {
+            pc.cache.invalidateAll(keys);
+        }
+    }
+
+    private ProjectCache<T> getProjectCache(final Project project) throws ExecutionException {
+        return projectCaches.get(project, new Callable<ProjectCache<T>>() {
+            @Override
+            public ProjectCache<T> call() {
+                ensureListener(project);
+                return new ProjectCache<T>(maxWeight);
+            }
+        });
+    }
+
+    // Called once per project cache creation. Listener is shared by all scope caches of the project.
+    private static void ensureListener(final Project project) {
+        synchronized (LISTENED_PROJECTS) {
+            if (!LISTENED_PROJECTS.add(project)) {
+                return;
+            }
+        }
+        Disposer.register(project, new Disposable() {
+            @Override
+            public void dispose() {
+                LOG.info(String.format("Scope cache statistics of project %s: %s", project.getName(), getAllStats(project)));
+            }
+        });
+        PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+            @Override
+            public void childAdded(@NotNull PsiTreeChangeEvent event) {
+                handleChange(project, event);
+            }
+
+            @Override
+            public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+                handleChange(project, event);
+            }
+
+            @Override
+            public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+                handleChange(project, event);
+            }
+
+            @Override
+            public void childMoved(@NotNull PsiTreeChangeEvent event) {
+                handleChange(project, event);
+            }
+
+            @Override
+            public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+                handleChange(project, event);
+            }
+        }, project);
+    }
+
+    private static void handleChange(Project project, PsiTreeChangeEvent event) {
+        PsiFile file = event.getFile();
+        VirtualFile virtualFile = file instanceof PascalFile ? file.getVirtualFile() : null;
+        if (virtualFile != null) {
+            invalidateFile(project, virtualFile.getPath());
+        }
+    }
+
+    private static class ProjectCache<T extends PasScopeImpl.Cached> {
+        private final Cache<String, T> cache;
+        // Keys of entries by file path of their scopes
+        private final ConcurrentMap<String, Set<String>> fileKeys = new ConcurrentHashMap<String, Set<String>>();
+
+        private ProjectCache(long maxWeight) {
+            // entries are normally evicted by weight, soft values only let GC reclaim referenced PSI under memory pressure
+            cache = CacheBuilder.newBuilder().maximumWeight(maxWeight).softValues()
+                    .weigher(new Weigher<String, T>() {
+                        @Override
+                        public int weigh(@NotNull String key, @NotNull T value) {
+                            return value.getWeight();
+                        }
+                    })
+                    .removalListener(new RemovalListener<String, T>() {
+                        @Override
+                        public void onRemoval(@NotNull RemovalNotification<String, T> notification) {
+                            T value = notification.getValue();
+                            Set<String> keys = (value != null) && (value.file != null) ? fileKeys.get(value.file) : null;
+                            if (keys != null) {
+                                keys.remove(notification.getKey());
+                            }
+                        }
+                    })
+                    .recordStats().build();
+        }
+
+        private Set<String> getFileKeys(String file) {
+            Set<String> res = fileKeys.get(file);
+            if (null == res) {
+                fileKeys.putIfAbsent(file, Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+                res = fileKeys.get(file);
+            }
+            return res;
+        }
+    }
+}
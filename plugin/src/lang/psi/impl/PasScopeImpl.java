@@ -1,6 +1,5 @@
 package com.siberika.idea.pascal.lang.psi.impl;
 
-import com.google.common.cache.Cache;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -84,7 +83,7 @@ public abstract class PasScopeImpl extends PascalNamedElementImpl implements Pas
         return String.format("%s%s", PsiUtil.getFieldName(this), scope != null ? "." + scope.getKey() : "");
     }
 
-    <T extends Cached> void ensureChache(Cache<String, T> cache) {
+    <T extends Cached> void ensureChache(PasScopeCache<T> cache) {
 /*        if (!PsiUtil.checkeElement(this)) {
             return false;
         }*/
@@ -96,7 +95,7 @@ public abstract class PasScopeImpl extends PascalNamedElementImpl implements Pas
             invalidateCaches(getKey());
             throw new ProcessCanceledException();
         }
-        Cached members = cache.getIfPresent(getKey());
+        Cached members = cache.getIfPresent(this);
         if ((members != null) && (getStamp(getContainingFile()) != members.stamp)) {
             invalidateCaches(getKey());
         }
@@ -169,14 +168,23 @@ public abstract class PasScopeImpl extends PascalNamedElementImpl implements Pas
     static class Cached {
         static final int UNCACHEABLE_STAMP = -1000000000;
         long stamp;
+        String file;
         public boolean isChachable() {
             return stamp != UNCACHEABLE_STAMP;
         }
+        // Used to limit memory occupied by cache
+        int getWeight() {
+            return 1;
+        }
     }
 
     static class Members extends Cached {
         Map<String, PasField> all = new LinkedHashMap<String, PasField>();
         Set<PascalNamedElement> redeclared = new LinkedHashSet<PascalNamedElement>();
+        @Override
+        int getWeight() {
+            return 1 + all.size() + redeclared.size();
+        }
         static Members createNotCacheable() {
             Members res = new Members();
             res.stamp = UNCACHEABLE_STAMP;
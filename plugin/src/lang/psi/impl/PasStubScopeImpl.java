@@ -1,6 +1,5 @@
 package com.siberika.idea.pascal.lang.psi.impl;
 
-import com.google.common.cache.Cache;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -141,7 +140,7 @@ public abstract class PasStubScopeImpl<B extends PasNamedStub> extends PascalNam
         return res;
     }
 
-    <T extends Cached> void ensureChache(Cache<String, T> cache) {
+    <T extends Cached> void ensureChache(PasScopeCache<T> cache) {
 /*        if (!PsiUtil.checkeElement(this)) {
             return false;
         }*/
@@ -153,7 +152,7 @@ public abstract class PasStubScopeImpl<B extends PasNamedStub> extends PascalNam
             invalidateCaches();
             throw new ProcessCanceledException();
         }
-        Cached members = cache.getIfPresent(getKey());
+        Cached members = cache.getIfPresent(this);
         if ((members != null) && (getStamp(getContainingFile()) != members.stamp)) {
             invalidateCaches();
         }
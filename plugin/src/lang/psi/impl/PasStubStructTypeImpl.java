@@ -1,7 +1,5 @@
 package com.siberika.idea.pascal.lang.psi.impl;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -59,7 +57,7 @@ public abstract class PasStubStructTypeImpl<T extends PascalStructType, B extend
 
     public static final Logger LOG = Logger.getInstance(PasStubStructTypeImpl.class.getName());
 
-    private static final Cache<String, Members> cache = CacheBuilder.newBuilder().softValues().build();
+    private static final PasScopeCache<Members> cache = new PasScopeCache<Members>("structMembers");
 
     private static final Map<String, PasField.Visibility> STR_TO_VIS;
 
@@ -172,10 +170,10 @@ public abstract class PasStubStructTypeImpl<T extends PascalStructType, B extend
     }
 
     @NotNull
-    private Members getMembers(Cache<String, Members> cache, Callable<? extends Members> builder) {
+    private Members getMembers(PasScopeCache<Members> cache, Callable<? extends Members> builder) {
         ensureChache(cache);
         try {
-            return cache.get(getKey(), builder);
+            return cache.get(this, builder);
         } catch (Exception e) {
             if (e.getCause() instanceof ProcessCanceledException) {
                 throw (ProcessCanceledException) e.getCause();
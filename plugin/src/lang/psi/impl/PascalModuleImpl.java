@@ -1,7 +1,5 @@
 package com.siberika.idea.pascal.lang.psi.impl;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -53,9 +51,9 @@ public abstract class PascalModuleImpl extends PasStubScopeImpl<PasModuleStub> i
 
     private static final UnitMembers EMPTY_MEMBERS = new UnitMembers();
     private static final Idents EMPTY_IDENTS = new Idents();
-    private static final Cache<String, Members> privateCache = CacheBuilder.newBuilder().softValues().build();
-    private static final Cache<String, Members> publicCache = CacheBuilder.newBuilder().softValues().build();
-    private static final Cache<String, Idents> identCache = CacheBuilder.newBuilder().softValues().build();
+    private static final PasScopeCache<Members> privateCache = new PasScopeCache<Members>("unitPrivate");
+    private static final PasScopeCache<Members> publicCache = new PasScopeCache<Members>("unitPublic");
+    private static final PasScopeCache<Idents> identCache = new PasScopeCache<Idents>("unitIdents");
     private static final String INTERFACE_PREFIX = "interface.";
 
     private final Callable<? extends Members> PRIVATE_BUILDER = this.new PrivateBuilder();
@@ -113,10 +111,10 @@ public abstract class PascalModuleImpl extends PasStubScopeImpl<PasModuleStub> i
     }
 
     @NotNull
-    private UnitMembers getMembers(Cache<String, Members> cache, Callable<? extends Members> builder) {
+    private UnitMembers getMembers(PasScopeCache<Members> cache, Callable<? extends Members> builder) {
         ensureChache(cache);
         try {
-            return (UnitMembers) cache.get(getKey(), builder);
+            return (UnitMembers) cache.get(this, builder);
         } catch (Exception e) {
             if (e.getCause() instanceof ProcessCanceledException) {
                 throw (ProcessCanceledException) e.getCause();
@@ -240,10 +238,10 @@ public abstract class PascalModuleImpl extends PasStubScopeImpl<PasModuleStub> i
     }
 
     @NotNull
-    private Idents getIdents(Cache<String, Idents> cache, Callable<? extends Idents> builder) {
+    private Idents getIdents(PasScopeCache<Idents> cache, Callable<? extends Idents> builder) {
         ensureChache(cache);
         try {
-            return cache.get(getKey(), builder);
+            return cache.get(this, builder);
         } catch (Exception e) {
             if (e.getCause() instanceof ProcessCanceledException) {
                 throw (ProcessCanceledException) e.getCause();
@@ -361,6 +359,10 @@ public abstract class PascalModuleImpl extends PasStubScopeImpl<PasModuleStub> i
 
     private static class Idents extends Cached {
         Map<String, PasField> idents = new HashMap<String, PasField>();
+        @Override
+        int getWeight() {
+            return 1 + idents.size();
+        }
     }
 
     private class IdentsBuilder implements Callable<Idents> {
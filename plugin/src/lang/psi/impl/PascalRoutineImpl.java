@@ -1,7 +1,5 @@
 package com.siberika.idea.pascal.lang.psi.impl;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.intellij.lang.ASTNode;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.psi.PsiElement;
@@ -40,7 +38,7 @@ import java.util.concurrent.locks.ReentrantLock;
  */
 public abstract class PascalRoutineImpl extends PasScopeImpl implements PascalRoutine, PasDeclSection, HasTypeParameters {
 
-    private static final Cache<String, Members> cache = CacheBuilder.newBuilder().softValues().build();
+    private static final PasScopeCache<Members> cache = new PasScopeCache<Members>("routineMembers");
 
     private ReentrantLock parentLock = new ReentrantLock();
     private List<SmartPsiElementPointer<PasEntityScope>> parentScopes;
@@ -103,12 +101,12 @@ public abstract class PascalRoutineImpl extends PasScopeImpl implements PascalRo
     }
 
     @NotNull
-    private Members getMembers(Cache<String, Members> cache, Callable<? extends Members> builder) {
+    private Members getMembers(PasScopeCache<Members> cache, Callable<? extends Members> builder) {
         ensureChache(cache);
         try {
-            Members res = cache.get(getKey(), builder);
+            Members res = cache.get(this, builder);
             if (!res.isChachable()) {
-                cache.invalidate(getKey());
+                cache.invalidate(this);
             }
             return res;
         } catch (Exception e) {
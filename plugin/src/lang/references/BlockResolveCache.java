@@ -0,0 +1,96 @@
+package com.siberika.idea.pascal.lang.references;
+
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.siberika.idea.pascal.lang.parser.NamespaceRec;
+import com.siberika.idea.pascal.lang.psi.PasBlockBody;
+import com.siberika.idea.pascal.lang.psi.PasWithStatement;
+import com.siberika.idea.pascal.lang.psi.impl.PasField;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+class BlockResolveCache {
+
+    private static final Key<CachedValue<ConcurrentMap<String, Entry>>> KEY = Key.create("PASCAL_BLOCK_RESOLVE_CACHE");
+
+    private static class Entry {
+        private final Collection<PasField> fields;
+        // Content of result scope after resolve or null if resolved without result scope
+        private final List<PsiElement> resultScope;
+
+        private Entry(Collection<PasField> fields, List<PsiElement> resultScope) {
+            this.fields = fields;
+            this.resultScope = resultScope;
+        }
+    }
+
+    /**
+     * Returns element within which resolve result of the FQN doesn't depend on the FQN position.
+     * Declarations can't appear within a block body so visibility of declarations by offset is the same for all identifiers inside it.
+     * Scope found during resolve is cached along with the result so resolves with an empty result scope list can be cached too.
+     * @return block body containing the FQN or null if the resolve can't be cached
+     */
+    @Nullable
+    static PsiElement getHolder(@NotNull NamespaceRec fqn, @NotNull ResolveContext context) {
+        if ((context.scope != null) || ((context.resultScope != null) && !context.resultScope.isEmpty()) || context.stubsOnly || context.disableParentNamespaces
+                || PasReferenceUtil.isCollectingAll(fqn)) {
+            return null;
+        }
+        PsiElement ident = fqn.getParentIdent();
+        PasBlockBody block = PsiTreeUtil.getParentOfType(ident, PasBlockBody.class);
+        if ((null == block) || (PsiTreeUtil.getParentOfType(ident, PasWithStatement.class, true, PasBlockBody.class) != null)) {
+            return null;
+        }
+        return block;
+    }
+
+    static String getKey(@NotNull NamespaceRec fqn, @NotNull ResolveContext context) {
+        return fqn.getResolveKey() + context.fieldTypes + context.includeLibrary + (context.unitNamespaces != null ? context.unitNamespaces : "");
+    }
+
+    /**
+     * Returns cached resolve result and fills result scope of the context with the scope obtained during the resolve
+     * @return resolve result or null if there is no suitable entry
+     */
+    @Nullable
+    static Collection<PasField> get(@NotNull PsiElement holder, @NotNull String key, @NotNull ResolveContext context) {
+        Entry entry = getCache(holder).get(key);
+        if ((null == entry) || ((context.resultScope != null) && (null == entry.resultScope))) {
+            return null;
+        }
+        if (context.resultScope != null) {
+            context.resultScope.addAll(entry.resultScope);
+        }
+        return new HashSet<PasField>(entry.fields);
+    }
+
+    static void put(@NotNull PsiElement holder, @NotNull String key, @NotNull Collection<PasField> result, @NotNull ResolveContext context) {
+        getCache(holder).put(key, new Entry(new HashSet<PasField>(result),
+                context.resultScope != null ? new ArrayList<PsiElement>(context.resultScope) : null));
+    }
+
+    // Valid until any PSI change in project or project roots change
+    private static ConcurrentMap<String, Entry> getCache(@NotNull final PsiElement holder) {
+        return CachedValuesManager.getCachedValue(holder, KEY, new CachedValueProvider<ConcurrentMap<String, Entry>>() {
+            @Nullable
+            @Override
+            public Result<ConcurrentMap<String, Entry>> compute() {
+                return Result.<ConcurrentMap<String, Entry>>create(new ConcurrentHashMap<String, Entry>(),
+                        PsiModificationTracker.MODIFICATION_COUNT, ProjectRootManager.getInstance(holder.getProject()));
+            }
+        });
+    }
+}
@@ -57,7 +57,6 @@ import com.siberika.idea.pascal.lang.psi.impl.PascalModuleImpl;
 import com.siberika.idea.pascal.sdk.BuiltinsParser;
 import com.siberika.idea.pascal.util.ModuleUtil;
 import com.siberika.idea.pascal.util.PsiUtil;
-import com.siberika.idea.pascal.util.SyncUtil;
 import org.apache.commons.lang.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -294,21 +293,14 @@ public class PasReferenceUtil {
         if (ResolveUtil.isStubPowered(field.owner)) {
             return ResolveUtil.retrieveFieldTypeScope(field, context, recursionCount);
         }
-        if (SyncUtil.tryLockQuiet(field.getTypeLock(), SyncUtil.LOCK_TIMEOUT_MS)) {
-            try {
-                if (!field.isTypeResolved()) {
-                    field.setValueType(resolveFieldType(field, true, recursionCount));
-                }
-                if (field.getValueType() == PasField.VARIANT) {
-                    return new PasVariantScope(field.getElement());
-                }
-                return field.getValueType() != null ? field.getValueType().getTypeScope() : null;
-            } finally {
-                field.getTypeLock().unlock();
-            }
-        } else {
-            return null;
+        PasField.ValueType valueType = field.getValueType();
+        if (!PasField.isResolved(valueType)) {
+            valueType = field.publishValueType(resolveFieldType(field, true, recursionCount));
+        }
+        if (valueType == PasField.VARIANT) {
+            return new PasVariantScope(field.getElement());
         }
+        return valueType != null ? valueType.getTypeScope() : null;
     }
 
     @Nullable
@@ -364,6 +356,20 @@ public class PasReferenceUtil {
         if (recursionCount > MAX_RECURSION_COUNT) {
             throw new PascalRTException("Too much recursion during resolving identifier: " + fqn.getParentIdent());
         }
+        PsiElement cacheHolder = BlockResolveCache.getHolder(fqn, context);
+        if (null == cacheHolder) {
+            return doResolve(fqn, context, recursionCount);
+        }
+        String key = BlockResolveCache.getKey(fqn, context);
+        Collection<PasField> result = BlockResolveCache.get(cacheHolder, key, context);
+        if (null == result) {
+            result = doResolve(fqn, context, recursionCount);
+            BlockResolveCache.put(cacheHolder, key, result, context);
+        }
+        return result;
+    }
+
+    private static Collection<PasField> doResolve(final NamespaceRec fqn, ResolveContext context, final int recursionCount) {
         if (null == context.unitNamespaces) {
             context.unitNamespaces = ModuleUtil.retrieveUnitNamespaces(fqn.getParentIdent());
         }
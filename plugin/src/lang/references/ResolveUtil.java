@@ -56,7 +56,6 @@ import com.siberika.idea.pascal.lang.stub.PascalModuleIndex;
 import com.siberika.idea.pascal.sdk.BuiltinsParser;
 import com.siberika.idea.pascal.util.ModuleUtil;
 import com.siberika.idea.pascal.util.PsiUtil;
-import com.siberika.idea.pascal.util.SyncUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -176,28 +175,21 @@ public class ResolveUtil {
 
     @Nullable
     public static PasEntityScope retrieveFieldTypeScope(@NotNull PasField field, ResolveContext context, int recursionCount) {
-        if (SyncUtil.tryLockQuiet(field.getTypeLock(), SyncUtil.LOCK_TIMEOUT_MS)) {
-            try {
-                if (!field.isTypeResolved()) {
-                    PascalNamedElement el = field.getElement();
-                    if ((el instanceof PascalStubElement) && (((PascalStubElement) el).retrieveStub() != null)) {
-                        PasField.ValueType valueType = resolveTypeWithStub((PascalStubElement) el, context, recursionCount);
-                        if (valueType != null) {
-                            valueType.field = field;
-                            field.setValueType(valueType);
-                        }
-                    }
-                }
-                if (field.getValueType() == PasField.VARIANT) {
-                    return new PasVariantScope(field.getElement());
+        PasField.ValueType fieldType = field.getValueType();
+        if (!PasField.isResolved(fieldType)) {
+            PascalNamedElement el = field.getElement();
+            if ((el instanceof PascalStubElement) && (((PascalStubElement) el).retrieveStub() != null)) {
+                PasField.ValueType valueType = resolveTypeWithStub((PascalStubElement) el, context, recursionCount);
+                if (valueType != null) {
+                    valueType.field = field;
+                    fieldType = field.publishValueType(valueType);
                 }
-                return field.getValueType() != null ? field.getValueType().getTypeScopeStub() : null;
-            } finally {
-                field.getTypeLock().unlock();
             }
-        } else {
-            return null;
         }
+        if (fieldType == PasField.VARIANT) {
+            return new PasVariantScope(field.getElement());
+        }
+        return fieldType != null ? fieldType.getTypeScopeStub() : null;
     }
 
     public static PasField.ValueType resolveTypeWithStub(PascalStubElement element, ResolveContext context, int recursionCount) {
@@ -34,6 +34,7 @@ import com.siberika.idea.pascal.DCUFileType;
 import com.siberika.idea.pascal.PPUFileType;
 import com.siberika.idea.pascal.PascalBundle;
 import com.siberika.idea.pascal.jps.sdk.PascalSdkData;
+import com.siberika.idea.pascal.lang.compiled.PPUDecompilerCache;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
@@ -57,6 +58,9 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
     private Sdk sdk;
     private JTextField namespacesEdit;
     private JTextField compilerOptionsEdit;
+    private JTextField parallelBuildsEdit;
+    private JCheckBox unitCacheCBox;
+    private JCheckBox responseFileCBox;
     private TextFieldWithBrowseButton decompilerCommandEdit;
     private TextFieldWithBrowseButton gdbCommandEdit;
     private ComboBox debugBackendCBox;
@@ -66,6 +70,7 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
     private JCheckBox debugBreakFullNames;
     private JCheckBox gdbRetrieveChilds;
     private JCheckBox gdbUseGdbInit;
+    private JCheckBox gdbNonStop;
     private final Map<String, JComponent> keyComponentMap = new HashMap<String, JComponent>();
 
     @Override
@@ -81,6 +86,9 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
         keyComponentMap.put(PascalSdkData.Keys.COMPILER_COMMAND.getKey(), compilerCommandEdit);
         keyComponentMap.put(PascalSdkData.Keys.COMPILER_NAMESPACES.getKey(), namespacesEdit);
         keyComponentMap.put(PascalSdkData.Keys.COMPILER_OPTIONS.getKey(), compilerOptionsEdit);
+        keyComponentMap.put(PascalSdkData.Keys.COMPILER_PARALLEL_BUILDS.getKey(), parallelBuildsEdit);
+        keyComponentMap.put(PascalSdkData.Keys.COMPILER_UNIT_CACHE.getKey(), unitCacheCBox);
+        keyComponentMap.put(PascalSdkData.Keys.COMPILER_RESPONSE_FILE.getKey(), responseFileCBox);
         keyComponentMap.put(PascalSdkData.Keys.DECOMPILER_COMMAND.getKey(), decompilerCommandEdit);
 
         keyComponentMap.put(PascalSdkData.Keys.DEBUGGER_BACKEND.getKey(), debugBackendCBox);
@@ -91,6 +99,7 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
         keyComponentMap.put(PascalSdkData.Keys.DEBUGGER_RETRIEVE_CHILDS.getKey(), gdbRetrieveChilds);
         keyComponentMap.put(PascalSdkData.Keys.DEBUGGER_RESOLVE_NAMES.getKey(), gdbResolveNames);
         keyComponentMap.put(PascalSdkData.Keys.DEBUGGER_USE_GDBINIT.getKey(), gdbUseGdbInit);
+        keyComponentMap.put(PascalSdkData.Keys.DEBUGGER_NON_STOP.getKey(), gdbNonStop);
 
         return myTabbedPane.getComponent();
     }
@@ -98,7 +107,7 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
     private JPanel createGeneralOptionsPanel() {
         JPanel panel = new JPanel();
         panel.setBorder(new LineBorder(JBColor.border()));
-        panel.setLayout(new GridLayoutManager(5, 2, JBUI.emptyInsets(), -1, -1));
+        panel.setLayout(new GridLayoutManager(8, 2, JBUI.emptyInsets(), -1, -1));
 
         int row = 0;
         addLabel(panel, PascalBundle.message("ui.sdkSettings.compiler.command"), row);
@@ -114,6 +123,18 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
         compilerOptionsEdit = new JTextField();
         panel.add(compilerOptionsEdit, new GridConstraints(row++, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
 
+        addLabel(panel, PascalBundle.message("ui.sdkSettings.compiler.parallel"), row);
+        parallelBuildsEdit = new JTextField();
+        panel.add(parallelBuildsEdit, new GridConstraints(row++, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
+
+        addLabel(panel, PascalBundle.message("ui.sdkSettings.compiler.unit.cache"), row);
+        unitCacheCBox = new JCheckBox();
+        panel.add(unitCacheCBox, new GridConstraints(row++, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
+
+        addLabel(panel, PascalBundle.message("ui.sdkSettings.compiler.response.file"), row);
+        responseFileCBox = new JCheckBox();
+        panel.add(responseFileCBox, new GridConstraints(row++, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
+
         addLabel(panel, PascalBundle.message("ui.sdkSettings.decompiler.command"), row);
         decompilerCommandEdit = addFileFieldWithBrowse(panel, row++);
 
@@ -129,7 +150,7 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
     private JPanel createDebuggerOptionsPanel() {
         JPanel panel = new JPanel();
         panel.setBorder(new LineBorder(JBColor.border()));
-        panel.setLayout(new GridLayoutManager(9, 2, JBUI.emptyInsets(), -1, -1));
+        panel.setLayout(new GridLayoutManager(10, 2, JBUI.emptyInsets(), -1, -1));
 
         int row = 0;
         addLabel(panel, PascalBundle.message("ui.sdkSettings.debug.backend"), row);
@@ -164,6 +185,10 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
         gdbUseGdbInit = new JCheckBox();
         panel.add(gdbUseGdbInit, new GridConstraints(row++, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
 
+        addLabel(panel, PascalBundle.message("ui.sdkSettings.gdb.non.stop"), row);
+        gdbNonStop = new JCheckBox();
+        panel.add(gdbNonStop, new GridConstraints(row++, 1, 1, 1, GridConstraints.ANCHOR_CENTER, GridConstraints.FILL_HORIZONTAL, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_WANT_GROW, GridConstraints.SIZEPOLICY_CAN_SHRINK | GridConstraints.SIZEPOLICY_CAN_GROW, null, null, null, 0, false));
+
         final JTextArea statusLabel = new JTextArea();
         statusLabel.setLineWrap(true);
         statusLabel.setMinimumSize(new Dimension(100, 20));
@@ -212,7 +237,7 @@ public class PascalSdkConfigUI implements AdditionalDataConfigurable {
                 !getValue(keyComponentMap.get(PascalSdkData.Keys.DECOMPILER_COMMAND.getKey())).equals(
                         BasePascalSdkType.getAdditionalData(sdk).getValue(PascalSdkData.Keys.DECOMPILER_COMMAND.getKey()))
                 ) {
-            BasePascalSdkType.getAdditionalData(sdk).setValue(PascalSdkData.Keys.DECOMPILER_CACHE.getKey(), null);
+            PPUDecompilerCache.invalidate(sdk);
             invalidateCompiledCache();
         }
         for (Map.Entry<String, JComponent> entry : keyComponentMap.entrySet()) {
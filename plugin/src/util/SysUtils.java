@@ -5,14 +5,23 @@ import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.CapturingProcessHandler;
 import com.intellij.execution.process.ProcessOutput;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
 import com.siberika.idea.pascal.PascalBundle;
 import com.siberika.idea.pascal.PascalException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Author: George Bakhtadze
@@ -22,6 +31,8 @@ public class SysUtils {
     public static final Logger LOG = Logger.getInstance(SysUtils.class.getName());
 
     public static final int STANDARD_TIMEOUT = 10 * 1000;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     @NotNull
     public static ProcessOutput getProcessOutput(@NotNull final String workDir, @NotNull final String exePath,
                                                  @NotNull final String... arguments) throws ExecutionException {
@@ -78,6 +89,61 @@ public class SysUtils {
         return stdout;
     }
 
+    /**
+     * Processes standard output of the process as it's produced without buffering of the whole output.
+     * Error output is redirected to a temporary file. The process is terminated if it doesn't finish within timeout.
+     * @return result of the processor or null if the output is empty
+     */
+    @Nullable
+    public static <T> T runAndProcessStdOut(String workDir, String exePath, @NotNull OutputProcessor<T> processor, String...params) throws Exception {
+        List<String> command = new ArrayList<String>(params.length + 1);
+        command.add(exePath);
+        command.addAll(Arrays.asList(params));
+        File errFile = FileUtil.createTempFile("stderr", ".txt", true);
+        LOG.info("Executing: " + StringUtil.join(command, " "));
+        final Process process = new ProcessBuilder(command).directory(new File(workDir)).redirectError(errFile).start();
+        Thread watchdog = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!process.waitFor(STANDARD_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        LOG.info("WARNING: Process timed out: " + process);
+                        process.destroy();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroy();
+                }
+            }
+        }, "Process watchdog: " + exePath);
+        watchdog.setDaemon(true);
+        watchdog.start();
+        PushbackInputStream stdout = new PushbackInputStream(new BufferedInputStream(process.getInputStream(), STREAM_BUFFER_SIZE));
+        try {
+            int first = stdout.read();
+            if (first >= 0) {
+                stdout.unread(first);
+                return processor.process(stdout);
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                String stderr = FileUtil.loadFile(errFile).trim();
+                LOG.info(String.format("WARNING: Error running %s. Code: %d", exePath, exitCode));
+                LOG.info(String.format("Error: %s", stderr));
+                throw new PascalException(PascalBundle.message("error.exit.code", exePath, exitCode, stderr));
+            }
+            return null;
+        } finally {
+            close(stdout);
+            process.destroy();
+            watchdog.interrupt();
+            FileUtil.delete(errFile);
+        }
+    }
+
+    public interface OutputProcessor<T> {
+        T process(@NotNull InputStream stdout) throws Exception;
+    }
+
     public static void close(Closeable closeable) {
         try {
             if (closeable != null) {
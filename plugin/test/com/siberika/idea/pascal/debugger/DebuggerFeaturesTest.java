@@ -0,0 +1,48 @@
+package com.siberika.idea.pascal.debugger;
+
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiParser;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DebuggerFeaturesTest {
+
+    @Test
+    public void testDisableOnUnsupported() throws Exception {
+        DebuggerFeatures features = new DebuggerFeatures(EnumSet.of(DebuggerFeatures.Feature.VAR_LIST_CHILDREN_RANGE, DebuggerFeatures.Feature.DPRINTF));
+        assertTrue(features.disableIfUnsupported(DebuggerFeatures.Feature.VAR_LIST_CHILDREN_RANGE,
+                GdbMiParser.parseLine("5^error,msg=\"-var-list-children: Usage: [PRINT_VALUES] NAME [FROM TO]\"")));
+        assertFalse(features.has(DebuggerFeatures.Feature.VAR_LIST_CHILDREN_RANGE));
+        assertTrue(features.disableIfUnsupported(DebuggerFeatures.Feature.DPRINTF,
+                GdbMiParser.parseLine("6^error,msg=\"Undefined MI command: dprintf-insert\",code=\"undefined-command\"")));
+        assertFalse(features.has(DebuggerFeatures.Feature.DPRINTF));
+        assertTrue(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("7^error,msg=\"Command 'var-list-children'. Command Args. Validation failed. Args missing additional information: 0 99\"")));
+        assertTrue(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("8^error,msg=\"Driver. Received command 'dprintf-insert'. It was not handled. Command 'dprintf-insert' not in Command Factory\"")));
+    }
+
+    @Test
+    public void testKeepOnOtherErrors() throws Exception {
+        DebuggerFeatures features = new DebuggerFeatures(EnumSet.of(DebuggerFeatures.Feature.VAR_UPDATE_ALL, DebuggerFeatures.Feature.NON_STOP));
+        assertFalse(features.disableIfUnsupported(DebuggerFeatures.Feature.VAR_UPDATE_ALL,
+                GdbMiParser.parseLine("7^error,msg=\"No frame selected.\"")));
+        assertTrue(features.has(DebuggerFeatures.Feature.VAR_UPDATE_ALL));
+        assertFalse(features.disableIfUnsupported(DebuggerFeatures.Feature.NON_STOP,
+                GdbMiParser.parseLine("8^error,msg=\"Cannot change this setting while the inferior is running.\"")));
+        assertTrue(features.has(DebuggerFeatures.Feature.NON_STOP));
+        assertFalse(features.disableIfUnsupported(DebuggerFeatures.Feature.NON_STOP, GdbMiParser.parseLine("9^done")));
+        assertTrue(features.has(DebuggerFeatures.Feature.NON_STOP));
+    }
+
+    @Test
+    public void testOrdinaryErrorsNotUnsupported() throws Exception {
+        assertFalse(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("10^error,msg=\"No symbol \\\"usage\\\" in current context.\"")));
+        assertFalse(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("11^error,msg=\"Unknown thread 5.\"")));
+        assertFalse(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("12^error,msg=\"Cannot access memory at address 0x0: undefined value\"")));
+        assertFalse(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("13^error,msg=\"Unrecognized option in expression\"")));
+        assertFalse(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("14^error,msg=\"-stack-list-frames: Not enough frames in stack.\"")));
+        assertFalse(DebuggerFeatures.isUnsupported(GdbMiParser.parseLine("15^error,msg=\"Attaching is not supported on this target\"")));
+    }
+}
@@ -2,6 +2,7 @@ package com.siberika.idea.pascal.debugger.gdb;
 
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiLine;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiParser;
+import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiParserException;
 import com.siberika.idea.pascal.debugger.gdb.parser.GdbMiResults;
 import org.junit.Test;
 
@@ -117,4 +118,49 @@ public class GdbMiParserTest {
         assertEquals("app.TOBJECT", child.getString("name"));
         assertEquals(Integer.valueOf(1), child.getInteger("numchild"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMemory() throws Exception {
+        String s = "^done,addr=\"0x00007fffffffe0a0\",nr-bytes=\"8\",total-bytes=\"8\",next-row=\"0x00007fffffffe0a8\",prev-row=\"0x00007fffffffe098\",next-page=\"0x00007fffffffe0a8\",prev-page=\"0x00007fffffffe098\",memory=[{addr=\"0x00007fffffffe0a0\",data=[\"0x01\",\"0x00\",\"0x00\",\"0x00\",\"0xff\",\"0x7f\",\"0x00\",\"0x00\"]}]";
+        GdbMiLine res = GdbMiParser.parseLine(s);
+        assertEquals(Integer.valueOf(8), res.getResults().getInteger("nr-bytes"));
+        GdbMiResults row = (GdbMiResults) res.getResults().getList("memory").get(0);
+        List<Object> data = row.getList("data");
+        assertEquals(8, data.size());
+        assertEquals("0x01", data.get(0));
+        assertEquals("0x7f", data.get(5));
+    }
+
+    @Test
+    public void testNestedLists() throws Exception {
+        String s = "^done,list=[[\"a\",\"b\"],[],{x=\"1\"},{}],tuple={}";
+        GdbMiLine res = GdbMiParser.parseLine(s);
+        List<Object> list = res.getResults().getList("list");
+        assertEquals(4, list.size());
+        assertEquals("b", ((List) list.get(0)).get(1));
+        assertEquals(0, ((List) list.get(1)).size());
+        assertEquals("1", ((GdbMiResults) list.get(2)).getString("x"));
+        assertEquals(null, res.getResults().getTuple("tuple").getValue("x"));
+    }
+
+    @Test
+    public void testThreadInfo() throws Exception {
+        String s = "^done,threads=[{id=\"2\",target-id=\"Thread 0x7ffff6fff700 (LWP 1235)\",name=\"server\",state=\"running\",core=\"1\"},{id=\"1\",target-id=\"Thread 0x7ffff7fd5740 (LWP 1234)\",frame={level=\"0\",addr=\"0x00000000004257f1\",func=\"main\",args=[],file=\"test.pas\",fullname=\"~/src/test/test.pas\",line=\"81\"},state=\"stopped\",core=\"0\"}],current-thread-id=\"1\"";
+        GdbMiLine res = GdbMiParser.parseLine(s);
+        List<Object> threads = res.getResults().getList("threads");
+        assertEquals(2, threads.size());
+        GdbMiResults running = (GdbMiResults) threads.get(0);
+        assertEquals("2", running.getString("id"));
+        assertEquals("running", running.getString("state"));
+        assertEquals(null, running.getTuple("frame"));
+        GdbMiResults stopped = (GdbMiResults) threads.get(1);
+        assertEquals("stopped", stopped.getString("state"));
+        assertEquals("81", stopped.getTuple("frame").getString("line"));
+        assertEquals("1", res.getResults().getString("current-thread-id"));
+    }
+
+    @Test(expected = GdbMiParserException.class)
+    public void testUnterminatedConst() throws Exception {
+        GdbMiParser.parseLine("^done,value=\"abc");
+    }
+}
@@ -0,0 +1,146 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.siberika.idea.pascal.jps.compiler.CompilerMessager;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.messages.BuildMessage;
+import org.jetbrains.jps.incremental.messages.CompilerMessage;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FPCCompilerProcessAdapterTest {
+
+    private FPCCompilerProcessAdapter adapter;
+    private CompileContext context;
+    private CompilerMessager messager;
+
+    @Before
+    public void setUp() throws Exception {
+        context = mock(CompileContext.class);
+        messager = new PascalCompilerMessager("test", context);
+        adapter = new FPCCompilerProcessAdapter(messager);
+    }
+
+    @Test
+    public void processLine() throws Exception {
+        adapter.processLine(messager, "/src/a.pas(10,5) Error: Identifier not found \"x\"\n");
+        adapter.processLine(messager, "C:\\Program Files (x86)\\a.pas(3,1) Warning: Function result does not seem to be set\r\n");
+        adapter.processLine(messager, "Fatal: Compilation aborted");
+        adapter.processLine(messager, "Compiling /src/a.pas (unit)");
+        adapter.processLine(messager, "/src/a.pas(7,12) Hint: Parameter \"Sender\" not used");
+        List<CompilerMessage> messages = captureMessages(5);
+        assertMessage(messages.get(0), BuildMessage.Kind.ERROR, "Identifier not found \"x\"", "/src/a.pas", 10, 5);
+        assertMessage(messages.get(1), BuildMessage.Kind.WARNING, "Function result does not seem to be set", "C:\\Program Files (x86)\\a.pas", 3, 1);
+        assertMessage(messages.get(2), BuildMessage.Kind.WARNING, "Compilation aborted", null, -1, -1);
+        assertMessage(messages.get(3), BuildMessage.Kind.INFO, "Compiling /src/a.pas (unit)", null, -1, -1);
+        assertMessage(messages.get(4), BuildMessage.Kind.INFO, "Hint: Parameter \"Sender\" not used", "/src/a.pas", 7, 12);
+    }
+
+    @Test
+    public void collapseHints() throws Exception {
+        String hint = "/src/b.pas(1,1) Note: Call to subroutine marked as inline is not inlined\n";
+        output(hint + hint + "/src/b.pas(2,1) Hint: Local variable \"i\" does not seem to be initialized\n" + hint + "/src/b.pas(3,");
+        output("1) Error: Illegal expression\nLinking b");
+        adapter.processTerminated(mock(ProcessEvent.class));
+        List<CompilerMessage> messages = captureMessages(5);
+        assertMessage(messages.get(0), BuildMessage.Kind.INFO, "Note: Call to subroutine marked as inline is not inlined", "/src/b.pas", 1, 1);
+        assertMessage(messages.get(2), BuildMessage.Kind.ERROR, "Illegal expression", "/src/b.pas", 3, 1);
+        assertMessage(messages.get(3), BuildMessage.Kind.INFO, "Linking b", null, -1, -1);
+        assertMessage(messages.get(4), BuildMessage.Kind.INFO, "2 repeated hints and notes are not shown", "/src/b.pas", -1, -1);
+    }
+
+    @Test
+    public void allLinesDelivered() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("Compiling unit").append(i).append(".pas\n");
+        }
+        output(sb.toString());
+        adapter.processTerminated(mock(ProcessEvent.class));
+        List<CompilerMessage> messages = captureMessages(500);
+        assertEquals("Compiling unit0.pas", messages.get(0).getMessageText());
+        assertEquals("Compiling unit499.pas", messages.get(499).getMessageText());
+    }
+
+    @Test
+    public void skippedLinesSummarized() throws Exception {
+        final CountDownLatch delivery = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                delivery.await();
+                return null;
+            }
+        }).when(context).processMessage(any(CompilerMessage.class));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i % 1000 == 999 ? "/src/a.pas(1,1) Error: Error " + i : "Compiling unit" + i + ".pas").append('\n');
+        }
+        output(sb.toString());
+        delivery.countDown();
+        adapter.processTerminated(mock(ProcessEvent.class));
+
+        Pattern summary = Pattern.compile("(\\d+) lines of compiler output are not shown");
+        int errors = 0;
+        int lines = 0;
+        int skipped = 0;
+        for (CompilerMessage message : captureAllMessages()) {
+            Matcher matcher = summary.matcher(message.getMessageText());
+            if (BuildMessage.Kind.ERROR.equals(message.getKind())) {
+                errors++;
+            } else if (matcher.matches()) {
+                skipped += Integer.parseInt(matcher.group(1));
+            } else {
+                lines++;
+            }
+        }
+        assertEquals(20, errors);
+        assertTrue(skipped > 0);
+        assertEquals(19980, lines + skipped);
+    }
+
+    private List<CompilerMessage> captureMessages(int count) {
+        ArgumentCaptor<CompilerMessage> argument = ArgumentCaptor.forClass(CompilerMessage.class);
+        verify(context, times(count)).processMessage(argument.capture());
+        return argument.getAllValues();
+    }
+
+    private List<CompilerMessage> captureAllMessages() {
+        ArgumentCaptor<CompilerMessage> argument = ArgumentCaptor.forClass(CompilerMessage.class);
+        verify(context, atLeastOnce()).processMessage(argument.capture());
+        return argument.getAllValues();
+    }
+
+    private static void assertMessage(CompilerMessage message, BuildMessage.Kind kind, String text, String path, long line, long column) {
+        assertEquals(kind, message.getKind());
+        assertEquals(text, message.getMessageText());
+        assertEquals(path, message.getSourcePath());
+        assertEquals(line, message.getLine());
+        assertEquals(column, message.getColumn());
+    }
+
+    private void output(String text) {
+        ProcessEvent event = mock(ProcessEvent.class);
+        when(event.getText()).thenReturn(text);
+        adapter.onTextAvailable(event, ProcessOutputTypes.STDOUT);
+    }
+}
@@ -0,0 +1,89 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PascalBuildSchedulerTest {
+
+    private static Map<String, List<String>> deps(String... pairs) {
+        Map<String, List<String>> res = new LinkedHashMap<String, List<String>>();
+        for (String pair : pairs) {
+            String[] parts = pair.split(":", -1);
+            res.put(parts[0], parts[1].isEmpty() ? Collections.<String>emptyList() : Arrays.asList(parts[1].split(",")));
+        }
+        return res;
+    }
+
+    private static class Recorder implements PascalBuildScheduler.Task<String> {
+        private final List<String> built = Collections.synchronizedList(new ArrayList<String>());
+        private final String failing;
+
+        private Recorder(String failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public boolean build(String target) {
+            built.add(target);
+            return !target.equals(failing);
+        }
+    }
+
+    @Test
+    public void testDependencyOrder() throws Exception {
+        Recorder task = new Recorder(null);
+        Set<String> skipped = new PascalBuildScheduler<String>(4).run(deps("app:lib1,lib2", "lib1:base", "lib2:base", "base:"), task);
+        assertTrue(skipped.isEmpty());
+        assertEquals(4, task.built.size());
+        assertEquals("base", task.built.get(0));
+        assertEquals("app", task.built.get(3));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        PascalBuildScheduler.Task<String> task = new PascalBuildScheduler.Task<String>() {
+            @Override
+            public boolean build(String target) {
+                latch.countDown();
+                try {
+                    // Both independent targets should be running at the same time
+                    return latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+        };
+        Set<String> skipped = new PascalBuildScheduler<String>(2).run(deps("lib1:", "lib2:", "app:lib1,lib2"), task);
+        assertTrue(skipped.isEmpty());
+    }
+
+    @Test
+    public void testFailedDependency() throws Exception {
+        Recorder task = new Recorder("lib1");
+        Set<String> skipped = new PascalBuildScheduler<String>(2).run(deps("lib1:", "lib2:lib1", "app:lib2", "other:"), task);
+        assertEquals(Arrays.asList("lib2", "app"), new ArrayList<String>(skipped));
+        assertEquals(2, task.built.size());
+        assertTrue(task.built.contains("other"));
+    }
+
+    @Test
+    public void testCycle() throws Exception {
+        Recorder task = new Recorder(null);
+        Set<String> skipped = new PascalBuildScheduler<String>(2).run(deps("a:b,ext", "b:a", "c:"), task);
+        assertTrue(skipped.isEmpty());
+        assertEquals(Arrays.asList("c", "a", "b"), task.built);
+    }
+}
@@ -0,0 +1,137 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PascalTargetBuilderTest extends UnitFilesTestCase {
+
+    private File main;
+    private Collection<File> sourceDirs;
+    private File graphFile;
+    private PascalUnitGraph graph;
+    private PascalUnitCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        main = write(new File(src, "main.pas"), "program main; uses a; begin end.");
+        write(new File(src, "a.pas"), "unit a; interface uses b; implementation end.");
+        write(new File(src, "b.pas"), "unit b; interface implementation end.");
+        sourceDirs = Collections.singletonList(src);
+        graphFile = new File(dir, "data/unit-graph.txt");
+    }
+
+    @Test
+    public void testUpToDate() throws Exception {
+        PascalTargetBuilder.UnitBuild build = build("-dDEBUG");
+        assertFalse(build.upToDate);
+        assertEquals(2, build.unitKeys.size());
+        assertTrue(build("-dDEBUG").upToDate);
+
+        FileUtil.delete(new File(out, "main"));
+        assertFalse(build("-dDEBUG").upToDate);
+    }
+
+    @Test
+    public void testSwitchOptions() throws Exception {
+        build("-dDEBUG");
+        PascalTargetBuilder.UnitBuild build = build("-dRELEASE");
+        assertFalse(build.upToDate);
+        assertEquals(0, build.restored);
+        assertEquals(2, build.unitKeys.size());
+        assertEquals("-dRELEASE", FileUtil.loadFile(new File(out, "a.ppu"), "UTF-8"));
+
+        build = build("-dDEBUG");
+        assertFalse(build.upToDate);
+        assertEquals(2, build.restored);
+        assertTrue(build.unitKeys.isEmpty());
+        assertEquals("-dDEBUG", FileUtil.loadFile(new File(out, "a.ppu"), "UTF-8"));
+        assertEquals("-dDEBUG", FileUtil.loadFile(new File(out, "b.o"), "UTF-8"));
+        assertTrue(build("-dDEBUG").upToDate);
+    }
+
+    @Test
+    public void testUnitsToCompile() throws Exception {
+        File a = new File(src, "a.pas");
+        File inc = write(new File(src, "a.inc"), "");
+        assertEquals(Arrays.asList(a, inc), PascalTargetBuilder.getUnitsToCompile(Arrays.asList(a, inc), dir));
+
+        List<File> units = PascalTargetBuilder.getUnitsToCompile(Arrays.asList(a, inc, new File(src, "b.pas")), dir);
+        assertEquals(1, units.size());
+        String text = FileUtil.loadFile(units.get(0), "UTF-8");
+        assertTrue(text, text.contains("uses\n  a,\n  b;"));
+    }
+
+    @Test
+    public void testMixedCaseUnit() throws Exception {
+        write(main, "program main; uses a, MyUnit; begin end.");
+        File unit = write(new File(src, "MyUnit.pas"), "unit MyUnit; interface implementation end.");
+        build("-dDEBUG");
+        assertTrue(new File(out, "myunit.ppu").isFile());
+
+        write(unit, "unit MyUnit; interface const C = 1; implementation end.");
+        unit.setLastModified(unit.lastModified() + 2000);
+        PascalTargetBuilder.UnitBuild build = prepare("-dDEBUG");
+        assertTrue(build.unitKeys.containsKey(unit.getAbsolutePath()));
+        assertFalse(new File(out, "myunit.ppu").exists());
+        assertFalse(new File(out, "myunit.o").exists());
+        assertTrue(new File(out, "a.ppu").isFile());
+    }
+
+    @Test
+    public void testRewrittenSourceNotRestored() throws Exception {
+        build("-dDEBUG");
+        build("-dRELEASE");
+        // Same contents with new modification time as after switching VCS branch back
+        File b = new File(src, "b.pas");
+        b.setLastModified(b.lastModified() + 2000);
+        PascalTargetBuilder.UnitBuild build = build("-dDEBUG");
+        assertEquals(0, build.restored);
+        assertEquals(2, build.unitKeys.size());
+    }
+
+    // Prepares the build like the builder does
+    private PascalTargetBuilder.UnitBuild prepare(String option) throws Exception {
+        String optionsHash = PascalUnitCache.getOptionsHash(compiler, Arrays.asList("-Mobjfpc", option));
+        graph = PascalUnitGraph.load(graphFile, sourceDirs, optionsHash);
+        cache = new PascalUnitCache(new File(dir, "cache"), optionsHash);
+        return PascalTargetBuilder.prepareUnits(graph, main, sourceDirs, new File(out, "main"), out, false, cache, EXTS);
+    }
+
+    // Prepares the build and emulates successful compilation of units which were not restored from cache
+    private PascalTargetBuilder.UnitBuild build(String option) throws Exception {
+        PascalTargetBuilder.UnitBuild build = prepare(option);
+        if (!build.upToDate) {
+            for (String path : graph.getFiles()) {
+                if (PascalUnitGraph.isUnitFile(path) && !path.equals(main.getAbsolutePath())) {
+                    // FPC names compiled files in lower case
+                    String name = FileUtil.getNameWithoutExtension(new File(path)).toLowerCase(Locale.ENGLISH);
+                    for (String ext : EXTS) {
+                        File compiled = new File(out, name + ext);
+                        if (!compiled.isFile()) {
+                            write(compiled, option);
+                        }
+                    }
+                }
+            }
+            write(new File(out, "main"), option);
+            graph.save(graphFile);
+            for (String path : build.unitKeys.keySet()) {
+                cache.store(build.unitKeys.get(path), FileUtil.getNameWithoutExtension(new File(path)), out, EXTS);
+            }
+        }
+        return build;
+    }
+}
@@ -0,0 +1,66 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PascalUnitCacheTest extends UnitFilesTestCase {
+
+    private PascalUnitCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        cache = new PascalUnitCache(new File(dir, "cache"), PascalUnitCache.getOptionsHash(compiler, Arrays.asList("-Mobjfpc", "-dDEBUG")));
+    }
+
+    @Test
+    public void testStoreRestore() throws Exception {
+        List<String> closure = Arrays.asList(write(new File(src, "a.pas"), "unit a;").getPath(), write(new File(src, "b.pas"), "unit b;").getPath());
+        String key = cache.getKey(closure);
+        assertFalse(cache.restore(key, out));
+        write(new File(out, "a.ppu"), "ppu");
+        write(new File(out, "a.o"), "obj");
+        cache.store(key, "a", out, EXTS);
+
+        FileUtil.delete(out);
+        assertTrue(cache.restore(key, out));
+        assertEquals("ppu", FileUtil.loadFile(new File(out, "a.ppu"), "UTF-8"));
+        assertEquals("obj", FileUtil.loadFile(new File(out, "a.o"), "UTF-8"));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        File a = write(new File(src, "a.pas"), "unit a;");
+        File b = write(new File(src, "b.pas"), "unit b;");
+        String key = cache.getKey(Arrays.asList(a.getPath(), b.getPath()));
+        assertEquals(key, cache.getKey(Arrays.asList(b.getPath(), a.getPath())));
+        assertFalse(key.equals(new PascalUnitCache(new File(dir, "cache"), PascalUnitCache.getOptionsHash(compiler, Collections.singletonList("-Mobjfpc"))).getKey(Arrays.asList(a.getPath(), b.getPath()))));
+        a.setLastModified(a.lastModified() + 2000);
+        assertFalse(key.equals(new PascalUnitCache(new File(dir, "cache"), PascalUnitCache.getOptionsHash(compiler, Arrays.asList("-Mobjfpc", "-dDEBUG"))).getKey(Arrays.asList(a.getPath(), b.getPath()))));
+        write(b, "unit b; interface");
+        assertFalse(key.equals(new PascalUnitCache(new File(dir, "cache"), PascalUnitCache.getOptionsHash(compiler, Arrays.asList("-Mobjfpc", "-dDEBUG"))).getKey(Arrays.asList(a.getPath(), b.getPath()))));
+    }
+
+    @Test
+    public void testLowerCaseOutput() throws Exception {
+        String key = cache.getKey(Collections.singletonList(write(new File(src, "MyUnit.pas"), "unit MyUnit;").getPath()));
+        write(new File(out, "myunit.ppu"), "ppu");
+        cache.store(key, "MyUnit", out, EXTS);
+        assertFalse(cache.restore(key, out));
+        write(new File(out, "myunit.o"), "obj");
+        cache.store(key, "MyUnit", out, EXTS);
+        FileUtil.delete(out);
+        assertTrue(cache.restore(key, out));
+        assertTrue(new File(out, "myunit.ppu").isFile());
+    }
+}
@@ -0,0 +1,99 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PascalUnitGraphTest {
+
+    private static final String OPTIONS = "1234abcd";
+
+    private File dir;
+    private Collection<File> sourceDirs;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = FileUtil.createTempDirectory("unitgraph", null);
+        sourceDirs = Collections.singletonList(dir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.delete(dir);
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        List<String> units = new ArrayList<String>();
+        List<String> includes = new ArrayList<String>();
+        PascalUnitGraph.parse("unit a; {$mode objfpc}{$I+}\ninterface\n{$I defs.inc}\nuses System.SysUtils, {comment} b in 'src\\b.pas', (* c *) c;\n"
+                + "implementation\n// uses fake;\nuses d;\n{$INCLUDE 'impl.inc'}{$I %DATE%}\nconst s = 'uses x;';\nend.", units, includes);
+        assertEquals(Arrays.asList("System.SysUtils", "b", "c", "d"), units);
+        assertEquals(Arrays.asList("defs.inc", "src\\b.pas", "impl.inc"), includes);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        File main = write("main.pas", "program main; uses a, sysutils; begin end.");
+        File a = write("a.pas", "unit a; interface uses b; implementation {$I a.inc} end.");
+        write("a.inc", "");
+        File b = write("b.pas", "unit b; interface implementation end.");
+        write("unused.pas", "unit unused; interface uses b; implementation end.");
+        File storage = new File(dir, "graph/unit-graph.txt");
+
+        PascalUnitGraph graph = PascalUnitGraph.load(storage, sourceDirs, OPTIONS);
+        assertTrue(graph.isNew());
+        assertEquals(4, graph.update(main, sourceDirs).size());
+        graph.save(storage);
+
+        graph = PascalUnitGraph.load(storage, sourceDirs, OPTIONS);
+        assertFalse(graph.isNew());
+        assertTrue(graph.update(main, sourceDirs).isEmpty());
+
+        assertTrue(b.setLastModified(b.lastModified() + 2000));
+        Set<String> changed = graph.update(main, sourceDirs);
+        assertEquals(Collections.singleton(b.getAbsolutePath()), changed);
+        assertEquals(new HashSet<String>(Arrays.asList(b.getAbsolutePath(), a.getAbsolutePath(), main.getAbsolutePath())), graph.getAffected(changed));
+    }
+
+    @Test
+    public void testPathsChanged() throws Exception {
+        File main = write("main.pas", "program main; begin end.");
+        File storage = new File(dir, "unit-graph.txt");
+        PascalUnitGraph graph = PascalUnitGraph.load(storage, sourceDirs, OPTIONS);
+        graph.update(main, sourceDirs);
+        graph.save(storage);
+        assertTrue(PascalUnitGraph.load(storage, Arrays.asList(dir, new File(dir, "lib")), OPTIONS).isNew());
+    }
+
+    @Test
+    public void testOptionsChanged() throws Exception {
+        File main = write("main.pas", "program main; begin end.");
+        File storage = new File(dir, "unit-graph.txt");
+        PascalUnitGraph graph = PascalUnitGraph.load(storage, sourceDirs, OPTIONS);
+        graph.update(main, sourceDirs);
+        graph.save(storage);
+        assertFalse(PascalUnitGraph.load(storage, sourceDirs, OPTIONS).isNew());
+        assertTrue(PascalUnitGraph.load(storage, sourceDirs, "5678ef01").isNew());
+    }
+
+    private File write(String name, String text) throws Exception {
+        File file = new File(dir, name);
+        FileUtil.writeToFile(file, text);
+        return file;
+    }
+}
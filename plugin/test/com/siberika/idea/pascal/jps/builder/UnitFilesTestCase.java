@@ -0,0 +1,40 @@
+package com.siberika.idea.pascal.jps.builder;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.File;
+
+/**
+ * Base class of tests working with sources and compiled units in a temporary directory
+ */
+public abstract class UnitFilesTestCase {
+
+    static final String[] EXTS = {".ppu", ".o"};
+
+    File dir;
+    File src;
+    File out;
+    // Fake compiler executable
+    File compiler;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = FileUtil.createTempDirectory("pascalunits", null);
+        src = new File(dir, "src");
+        out = new File(dir, "out");
+        compiler = write(new File(dir, "fpc"), "compiler");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.delete(dir);
+    }
+
+    static File write(File file, String text) throws Exception {
+        FileUtil.createParentDirs(file);
+        FileUtil.writeToFile(file, text);
+        return file;
+    }
+}
@@ -0,0 +1,115 @@
+package com.siberika.idea.pascal.jps.compiler;
+
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.openapi.util.io.FileUtil;
+import com.siberika.idea.pascal.jps.util.ParamMap;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PascalBackendCompilerTest {
+
+    private File dir;
+    private File lib;
+    private File sdk;
+    private PascalBackendCompiler compiler;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = FileUtil.createTempDirectory("compiler", null);
+        lib = new File(dir, "lib");
+        sdk = new File(dir, "sdk");
+        assertTrue(lib.mkdir() && sdk.mkdir());
+        compiler = new PascalBackendCompiler(null) {
+            @Override
+            protected boolean createStartupCommandImpl(String sdkHomePath, String moduleName, String outputDirExe, String outputDirUnit,
+                                                       List<File> sdkFiles, List<File> moduleLibFiles, boolean isRebuild,
+                                                       ParamMap pascalSdkData, ArrayList<String> commandLine) {
+                return true;
+            }
+
+            @NotNull
+            @Override
+            public String getId() {
+                return "test";
+            }
+
+            @Override
+            public ProcessAdapter getCompilerProcessAdapter(CompilerMessager messager) {
+                return null;
+            }
+
+            @Override
+            public String getCompiledUnitExt() {
+                return ".ppu";
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.delete(dir);
+    }
+
+    @Test
+    public void testSearchPaths() throws Exception {
+        ArrayList<String> commandLine = new ArrayList<String>();
+        compiler.addSearchPaths(commandLine, Collections.singletonList(lib), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertEquals(Arrays.asList("-Fu" + lib.getAbsolutePath(), "-Fi" + lib.getAbsolutePath(), "-Fu" + sdk.getAbsolutePath(), "-Fi" + sdk.getAbsolutePath()), commandLine);
+    }
+
+    @Test
+    public void testResponseFile() throws Exception {
+        File data = new File(dir, "data");
+        compiler.setResponseFileDir(data, false);
+        ArrayList<String> commandLine = new ArrayList<String>();
+        compiler.addSearchPaths(commandLine, Collections.singletonList(lib), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertEquals(1, commandLine.size());
+        File responseFile = new File(commandLine.get(0).substring(1));
+        assertEquals("-Fu" + lib.getAbsolutePath() + "\n-Fi" + lib.getAbsolutePath() + "\n-Fu" + sdk.getAbsolutePath() + "\n-Fi" + sdk.getAbsolutePath() + "\n",
+                FileUtil.loadFile(responseFile, "UTF-8"));
+
+        // Response file is reused while the roots are the same
+        long modified = responseFile.lastModified() - 2000;
+        assertTrue(responseFile.setLastModified(modified));
+        commandLine.clear();
+        compiler.addSearchPaths(commandLine, Collections.singletonList(lib), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertEquals(Collections.singletonList("@" + responseFile.getPath()), commandLine);
+        assertEquals(modified, responseFile.lastModified());
+
+        // Deleted root is removed from the file when it's regenerated on rebuild
+        assertTrue(FileUtil.delete(sdk));
+        commandLine.clear();
+        compiler.addSearchPaths(commandLine, Collections.singletonList(lib), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertEquals(modified, responseFile.lastModified());
+        compiler.setResponseFileDir(data, true);
+        commandLine.clear();
+        compiler.addSearchPaths(commandLine, Collections.singletonList(lib), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertEquals(Collections.singletonList("@" + responseFile.getPath()), commandLine);
+        assertEquals("-Fu" + lib.getAbsolutePath() + "\n-Fi" + lib.getAbsolutePath() + "\n", FileUtil.loadFile(responseFile, "UTF-8"));
+
+        // Created root is passed to the compiler
+        compiler.setResponseFileDir(data, false);
+        assertTrue(sdk.mkdir());
+        commandLine.clear();
+        compiler.addSearchPaths(commandLine, Collections.singletonList(lib), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertTrue(FileUtil.loadFile(responseFile, "UTF-8").contains("-Fu" + sdk.getAbsolutePath()));
+
+        // Changed list of roots
+        File other = new File(dir, "other");
+        assertTrue(other.mkdir());
+        commandLine.clear();
+        compiler.addSearchPaths(commandLine, Arrays.asList(lib, other), Collections.singletonList(sdk), "-Fu", "-Fi");
+        assertTrue(FileUtil.loadFile(responseFile, "UTF-8").contains("-Fu" + other.getAbsolutePath()));
+    }
+}
@@ -3,20 +3,23 @@ package com.siberika.idea.pascal.lang.compiled;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.LightVirtualFile;
-import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 public class PPUDumpParserTest {
@@ -42,6 +45,24 @@ public class PPUDumpParserTest {
         System.out.println(section2);
     }
 
+    @Test
+    public void testUnresolved() {
+        Map<String, String> names = new HashMap<String, String>();
+        assertFalse(PPUDumpParser.Section.restore("var a: system.LongInt;", names, names).hasUnresolved());
+        assertTrue(PPUDumpParser.Section.restore("var a: system.__unresolved_42;", names, names).hasUnresolved());
+    }
+
+    @Test
+    public void testUsedResolvedAfterParsing() throws Exception {
+        String xml = "<ppudump><unit><name>u</name><units><value>sys</value></units><interface>" +
+                "<var><name>a</name><vartype><unit>0</unit><id>5</id></vartype></var></interface></unit></ppudump>";
+        PPUDumpParser.Section section = PPUDumpParser.parseUnresolved(new ByteArrayInputStream(xml.getBytes("utf-8")));
+        assertFalse(section.hasUnresolved());
+        PPUDumpParser.resolveUsed(section, null);
+        assertTrue(section.getResult().contains("var a: sys.__unresolved_5;"));
+        assertTrue(section.hasUnresolved());
+    }
+
     private static class PPUDecompilerCacheTest extends PPUDecompilerCache {
         private final Map<String, File> files;
 
@@ -51,8 +72,13 @@ public class PPUDumpParserTest {
         }
 
         @Override
-        String retrieveXml(String key, File ppuDump) throws IOException {
-            return IOUtils.toString(new FileInputStream(files.get(key)), "UTF-8");
+        PPUDumpParser.Section retrieveSection(String key, File ppuDump) throws Exception {
+            InputStream is = new FileInputStream(files.get(key));
+            try {
+                return PPUDumpParser.parse(is, this);
+            } finally {
+                is.close();
+            }
         }
 
         @Override
@@ -4,8 +4,6 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Author: George Bakhtadze
@@ -15,27 +13,57 @@ public class ConditionParserTest {
 
     @Test
     public void testParseSimple() {
-        Set<String> def = new HashSet<>(Arrays.asList("DEF1", "DEF2"));
-        Assert.assertTrue(ConditionParser.checkCondition("defined(def1)", def));
-        Assert.assertTrue(ConditionParser.checkCondition("defined(def1) or Defined(undef)", def));
-        Assert.assertTrue(ConditionParser.checkCondition("defined(def1) and defined(def2)", def));
-        Assert.assertTrue(ConditionParser.checkCondition("defined(def1) OR defined(undef) and defined(def2)", def));
-
-        Assert.assertTrue(ConditionParser.checkCondition("not defined(def1) OR not defined(undef) and not defined(undef)", def));
-
-        Assert.assertFalse(ConditionParser.checkCondition("DEFINED(undef)", def));
-        Assert.assertFalse(ConditionParser.checkCondition("defined(undef) OR defined(otherundef)", def));
-        Assert.assertFalse(ConditionParser.checkCondition("defined(undef) And defined(otherundef)", def));
-        Assert.assertFalse(ConditionParser.checkCondition("defined(def1) and defined(undef)", def));
-        Assert.assertFalse(ConditionParser.checkCondition("DEFI(invalid", def));
+        DefineSymbols def = new DefineSymbols(Arrays.asList("DEF1", "DEF2"));
+        Assert.assertTrue(check("defined(def1)", def));
+        Assert.assertTrue(check("defined(def1) or Defined(undef)", def));
+        Assert.assertTrue(check("defined(def1) and defined(def2)", def));
+        Assert.assertTrue(check("defined(def1) OR defined(undef) and defined(def2)", def));
+
+        Assert.assertTrue(check("not defined(def1) OR not defined(undef) and not defined(undef)", def));
+
+        Assert.assertFalse(check("DEFINED(undef)", def));
+        Assert.assertFalse(check("defined(undef) OR defined(otherundef)", def));
+        Assert.assertFalse(check("defined(undef) And defined(otherundef)", def));
+        Assert.assertFalse(check("defined(def1) and defined(undef)", def));
+        Assert.assertFalse(check("DEFI(invalid", def));
     }
 
     @Test
     public void testParseComplex() {
-        Set<String> def = new HashSet<>(Arrays.asList("DEF1", "DEF2", "DEF3", "DEF4"));
-        Assert.assertTrue(ConditionParser.checkCondition("not (defined(undef))", def));
-        Assert.assertTrue(ConditionParser.checkCondition("not (defined(undef)) and\n (defined(def1)\n or defined(undef))", def));
-        Assert.assertTrue(ConditionParser.checkCondition("defined(def1) and defined(def2)", def));
-        Assert.assertTrue(ConditionParser.checkCondition("defined(def1) and ( (defined(undef) or defined(def2)) or (not defined(undef) and defined(def3)) )", def));
+        DefineSymbols def = new DefineSymbols(Arrays.asList("DEF1", "DEF2", "DEF3", "DEF4"));
+        Assert.assertTrue(check("not (defined(undef))", def));
+        Assert.assertTrue(check("not (defined(undef)) and\n (defined(def1)\n or defined(undef))", def));
+        Assert.assertTrue(check("defined(def1) and defined(def2)", def));
+        Assert.assertTrue(check("defined(def1) and ( (defined(undef) or defined(def2)) or (not defined(undef) and defined(def3)) )", def));
+    }
+
+    @Test
+    public void testParseComparisons() {
+        DefineSymbols def = new DefineSymbols(Arrays.asList("DEF1", "DEF2"));
+        Assert.assertTrue(check("3 >= 2", def));
+        Assert.assertTrue(check("$10 = 16", def));
+        Assert.assertTrue(check("'abc' <> 'abd'", def));
+        Assert.assertTrue(check("(1 < 2) and defined(def1)", def));
+        Assert.assertTrue(check("defined(def1) xor defined(undef)", def));
+        Assert.assertFalse(check("(2 <= 1) or defined(undef)", def));
+        Assert.assertFalse(check("defined(def1) xor defined(def2)", def));
+        Assert.assertFalse(check("1 > ", def));
+    }
+
+    @Test
+    public void testParseUnknown() {
+        DefineSymbols def = new DefineSymbols(Arrays.asList("DEF1", "DEF2"));
+        Assert.assertFalse(check("FPC_FULLVERSION >= 30000", def));
+        Assert.assertFalse(check("declared(TObject)", def));
+        Assert.assertFalse(check("not declared(TObject)", def));
+        Assert.assertFalse(check("declared(TObject) or defined(undef)", def));
+        Assert.assertFalse(check("declared(TObject) and defined(undef)", def));
+        Assert.assertFalse(check("defined(undef) and (CompilerVersion > 20)", def));
+        Assert.assertTrue(check("declared(TObject) or defined(def1)", def));
+        Assert.assertTrue(check("not (defined(undef) and (CompilerVersion > 20))", def));
+    }
+
+    private static boolean check(String condition, DefineSymbols symbols) {
+        return ConditionParser.checkCondition(condition, symbols, symbols.getInitialDefines());
     }
 }
@@ -0,0 +1,71 @@
+package com.siberika.idea.pascal.lang.lexer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConditionalSnapshotsTest {
+
+    @Test
+    public void testIndexBefore() {
+        ConditionalSnapshots snapshots = new ConditionalSnapshots();
+        DefineSet def = DefineSet.EMPTY.with(1);
+        for (int i = 1; i <= 100; i++) {
+            snapshots.add(i * 10, i, def);
+        }
+        Assert.assertEquals(-1, snapshots.indexBefore(0));
+        Assert.assertEquals(-1, snapshots.indexBefore(10));
+        Assert.assertEquals(0, snapshots.indexBefore(11));
+        Assert.assertEquals(4, snapshots.indexBefore(55));
+        Assert.assertEquals(4, snapshots.indexBefore(60));
+        Assert.assertEquals(99, snapshots.indexBefore(5000));
+        Assert.assertEquals(5, snapshots.getLevel(4));
+    }
+
+    @Test
+    public void testTruncate() {
+        ConditionalSnapshots snapshots = new ConditionalSnapshots();
+        DefineSet def = DefineSet.EMPTY.with(1);
+        snapshots.add(10, 1, def);
+        snapshots.add(20, 2, DefineSet.EMPTY);
+        snapshots.add(30, 3, def);
+        snapshots.truncate(snapshots.indexBefore(20) + 1);
+        Assert.assertEquals(1, snapshots.size());
+        snapshots.add(25, 4, def);
+        Assert.assertEquals(1, snapshots.indexBefore(30));
+        Assert.assertEquals(4, snapshots.getLevel(1));
+        Assert.assertSame(def, snapshots.getDefines(1));
+    }
+
+    @Test
+    public void testAppendShifted() {
+        DefineSet def = DefineSet.EMPTY.with(1);
+        ConditionalSnapshots previous = new ConditionalSnapshots();
+        previous.add(10, 1, def);
+        previous.add(20, 2, def);
+        previous.add(30, 3, def);
+        ConditionalSnapshots snapshots = previous.copy();
+        snapshots.truncate(1);
+        snapshots.add(15, 5, DefineSet.EMPTY);
+        snapshots.appendShifted(previous, 5, 25);
+        Assert.assertEquals(4, snapshots.size());
+        Assert.assertEquals(1, snapshots.indexBefore(25));
+        Assert.assertEquals(2, snapshots.indexBefore(35));
+        Assert.assertEquals(2, snapshots.getLevel(2));
+        Assert.assertEquals(3, snapshots.getLevel(3));
+        Assert.assertEquals(3, previous.size());
+    }
+
+    @Test
+    public void testIsSame() {
+        DefineSet def = DefineSet.EMPTY.with(1);
+        ConditionalSnapshots previous = new ConditionalSnapshots();
+        previous.add(10, 1, def);
+        ConditionalSnapshots snapshots = new ConditionalSnapshots();
+        snapshots.add(12, 1, DefineSet.EMPTY.with(1));
+        snapshots.add(20, 1, DefineSet.EMPTY);
+        Assert.assertTrue(snapshots.isSame(0, previous, 0));
+        Assert.assertFalse(snapshots.isSame(1, previous, 0));
+        Assert.assertFalse(snapshots.isSame(0, previous, -1));
+        Assert.assertTrue(snapshots.isSame(-1, previous, -1));
+    }
+}
@@ -0,0 +1,38 @@
+package com.siberika.idea.pascal.lang.lexer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class DefineSetTest {
+
+    @Test
+    public void testModify() {
+        DefineSet set = DefineSet.EMPTY.with(3).with(64).with(130);
+        Assert.assertTrue(set.contains(3));
+        Assert.assertTrue(set.contains(64));
+        Assert.assertTrue(set.contains(130));
+        Assert.assertFalse(set.contains(4));
+        Assert.assertFalse(set.contains(1000));
+        Assert.assertFalse(set.contains(-1));
+        Assert.assertSame(set, set.with(64));
+        Assert.assertSame(set, set.without(5));
+
+        DefineSet removed = set.without(64);
+        Assert.assertFalse(removed.contains(64));
+        Assert.assertTrue(set.contains(64));
+        Assert.assertArrayEquals(new int[] {3, 130}, removed.getIds());
+    }
+
+    @Test
+    public void testUnionAndEquals() {
+        DefineSet set1 = DefineSet.EMPTY.with(1).with(70);
+        DefineSet set2 = DefineSet.EMPTY.with(2);
+        DefineSet union = set1.union(set2);
+        Assert.assertEquals("[1, 2, 70]", Arrays.toString(union.getIds()));
+        Assert.assertSame(union, union.union(set2));
+        Assert.assertEquals(set2, union.without(1).without(70));
+        Assert.assertEquals(set2.hashCode(), union.without(1).without(70).hashCode());
+    }
+}
@@ -0,0 +1,43 @@
+package com.siberika.idea.pascal.lang.references;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.intellij.util.SmartList;
+import com.siberika.idea.pascal.lang.parser.NamespaceRec;
+import com.siberika.idea.pascal.lang.psi.PasBlockBody;
+import com.siberika.idea.pascal.lang.psi.PasSubIdent;
+import com.siberika.idea.pascal.lang.psi.impl.PasField;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class BlockResolveCacheTest extends LightPlatformCodeInsightFixtureTestCase {
+
+    public void testResultScopeReplayed() {
+        myFixture.configureByText("test.pas", "program test;\ntype TR = record x: Integer; end;\nvar r: TR;\nbegin\n  r.x := 1;\n  r.x := r.x + 1;\nend.");
+        List<PasSubIdent> idents = new ArrayList<PasSubIdent>();
+        for (PasSubIdent ident : PsiTreeUtil.findChildrenOfType(myFixture.getFile(), PasSubIdent.class)) {
+            if ("x".equals(ident.getName()) && (PsiTreeUtil.getParentOfType(ident, PasBlockBody.class) != null)) {
+                idents.add(ident);
+            }
+        }
+        assertEquals(3, idents.size());
+
+        // Annotator-style context with result scope
+        List<PsiElement> scopes = new SmartList<PsiElement>();
+        Collection<PasField> first = PasReferenceUtil.resolveExpr(NamespaceRec.fromElement(idents.get(0)), new ResolveContext(null, PasField.TYPES_ALL, true, scopes, null), 0);
+        assertFalse(first.isEmpty());
+        assertFalse(scopes.isEmpty());
+
+        NamespaceRec fqn = NamespaceRec.fromElement(idents.get(1));
+        ResolveContext context = new ResolveContext(null, PasField.TYPES_ALL, true, new SmartList<PsiElement>(), null);
+        PsiElement holder = BlockResolveCache.getHolder(fqn, context);
+        assertNotNull(holder);
+        Collection<PasField> cached = BlockResolveCache.get(holder, BlockResolveCache.getKey(fqn, context), context);
+        assertNotNull(cached);
+        assertEquals(first, cached);
+        assertEquals(scopes, context.resultScope);
+    }
+}